@@ -8,21 +8,39 @@ import android.util.Log;
 import org.json.JSONException;
 
 import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
 
 import io.honeyqa.client.auth.Authentication;
 import io.honeyqa.client.auth.Encryptor;
+import io.honeyqa.client.collector.ActivityTracker;
+import io.honeyqa.client.collector.DateCollector;
 import io.honeyqa.client.collector.DeviceCollector;
+import io.honeyqa.client.collector.DeviceProfile;
+import io.honeyqa.client.collector.DeviceStateTracker;
 import io.honeyqa.client.collector.ErrorReport;
 import io.honeyqa.client.collector.ErrorReportFactory;
+import io.honeyqa.client.collector.FrameSampler;
+import io.honeyqa.client.collector.LogBuffer;
 import io.honeyqa.client.network.Sender;
 import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.eventpath.EventPath;
 import io.honeyqa.client.eventpath.EventPathManager;
+import io.honeyqa.client.exception.ANRWatchdog;
+import io.honeyqa.client.exception.ExceptionRateLimiter;
 import io.honeyqa.client.exception.UncaughtExceptionHandler;
+import io.honeyqa.client.json.JSONStartup;
 import io.honeyqa.client.network.NetworkResource;
+import io.honeyqa.client.network.UploadScheduler;
 import io.honeyqa.client.rank.ErrorRank;
 
 public final class HoneyQAClient {
 
+    private static final String INITIALIZE = "initialize";
+    private static final String HANDLED_EXCEPTIONS = "handled_exceptions";
+    // handled exceptions waiting to be built, bounded by HoneyQAData.MaxPendingUploads
+    private static final LinkedList<Runnable> handledExceptions = new LinkedList<Runnable>();
+
     /**
      * Create breadcrumb for log tracing
      */
@@ -52,49 +70,106 @@ public final class HoneyQAClient {
      * Reset Token
      */
     public static void resetTokens(Context context) {
-        try {
-            // request token
-            Encryptor.requestToken(context);
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        // shares a running exchange, uploads are held until the token arrives
+        Encryptor.renewToken(context);
     }
 
     /***/
     @SuppressLint("NewApi")
     public static void SendSession(Context context, String APIKEY) {
-        sendSession(context, APIKEY);
+        sendSession(context, APIKEY, null);
     }
 
     // 세션 초기화 / 시작
     @SuppressLint("NewApi")
     public static void InitializeAndStartSession(Context context, String APIKEY) {
+        JSONStartup startup = new JSONStartup("sync");
+        loadEncryptionKey(context);
+        startup.mark("encryption_key");
         if (HoneyQAData.FIRST_CONNECT) {
-            HoneyQAData.APP_CONTEXT = context;
-            HoneyQAData.FIRST_CONNECT = false;
-            HoneyQAData.APIKEY = APIKEY;
-            new UncaughtExceptionHandler();
-            sendSession(context, APIKEY);
+            installExceptionHandler(context, APIKEY);
+            startup.mark("exception_handler");
+            startServices(context, APIKEY, startup);
         }
+        EventPathManager.ClearEvent();
+    }
 
-        //about init encrytion
+    /**
+     * Initialize without blocking the calling thread: only the exception handler is
+     * installed synchronously, everything else runs on the upload worker. Stage costs
+     * are sent with the session.
+     */
+    public static void InitializeAndStartSessionAsync(final Context context, final String APIKEY) {
+        if (!HoneyQAData.FIRST_CONNECT)
+            return;
+        final JSONStartup startup = new JSONStartup("async");
+        installExceptionHandler(context, APIKEY);
+        EventPathManager.ClearEvent();
+        startup.mark("exception_handler");
+        UploadScheduler.schedule(INITIALIZE, new Runnable() {
+            @Override
+            public void run() {
+                startup.resume();
+                loadEncryptionKey(context);
+                startup.mark("encryption_key");
+                startServices(context, APIKEY, startup);
+            }
+        });
+        // nothing is marked after scheduling, it would race with the stages of the worker
+    }
+
+    public static void InitializeAndStartSessionAsync(Context context, String APIKEY, boolean isEncrypt) {
+        HoneyQAData.isEncrypt = isEncrypt;
+        InitializeAndStartSessionAsync(context, APIKEY);
+    }
+
+    private static void installExceptionHandler(Context context, String APIKEY) {
+        HoneyQAData.APP_CONTEXT = context;
+        HoneyQAData.FIRST_CONNECT = false;
+        HoneyQAData.APIKEY = APIKEY;
+        new UncaughtExceptionHandler();
+    }
+
+    /**
+     * Load stored key before any upload is scheduled, exchange runs in background
+     */
+    private static void loadEncryptionKey(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(Encryptor.ENCRYPTION, Context.MODE_PRIVATE);
         String baseKey = prefs.getString(Encryptor.ENCRYPTION_BASE_KEY, null);
         String token = prefs.getString(Encryptor.ENCRYPTION_TOKEN, null);
-        if (baseKey == null) {
-            try {
-                Log.e(HoneyQAData.HONEYQA_SDK_LOG, "request Token");
-                Encryptor.requestToken(context);
-            } catch (Exception e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+        if (baseKey == null || token == null) {
+            Log.e(HoneyQAData.HONEYQA_SDK_LOG, "request Token");
+            Encryptor.requestToken(context);
         } else {
             Encryptor.token = token;
             Encryptor.baseKey = baseKey;
         }
-        EventPathManager.ClearEvent();
+    }
+
+    private static void startServices(final Context context, String APIKEY, JSONStartup startup) {
+        DeviceStateTracker.setOnConnectedListener(new Runnable() {
+            @Override
+            public void run() {
+                // retry a key exchange which failed offline, then replay what was saved
+                if (HoneyQAData.isEncrypt && !Encryptor.hasToken())
+                    Encryptor.requestToken(context);
+                Sender.flushExceptions(context, NetworkResource.EXCEPTION_URL);
+                Sender.flushSessions(context, false);
+            }
+        });
+        DeviceStateTracker.start(context);
+        startup.mark("device_state");
+        ActivityTracker.start(context);
+        startup.mark("activity_tracker");
+        ANRWatchdog.start(context);
+        startup.mark("anr_watchdog");
+        FrameSampler.start(context);
+        startup.mark("frame_sampler");
+        // upload reports saved by previous process
+        Sender.flushExceptions(context, NetworkResource.EXCEPTION_URL);
+        startup.mark("schedule_uploads");
+        // last, startup is serialized by the session task after every stage is marked
+        sendSession(context, APIKEY, startup);
     }
 
     @SuppressLint("NewApi")
@@ -103,30 +178,114 @@ public final class HoneyQAClient {
         InitializeAndStartSession(context, APIKEY);
     }
 
-    private static void sendSession(Context context, String apiKey) {
-        Authentication authentication = new Authentication();
-        authentication.setKey(HoneyQAData.APIKEY);
-        authentication.setAppVersion(DeviceCollector.getAppVersion(context));
-        authentication.setAndroidVersion(DeviceCollector.getVersionRelease());
-        authentication.setModel(DeviceCollector.getDeviceModel());
-        authentication.setManufacturer(DeviceCollector.getManufacturer());
-        authentication.setCountryCode(DeviceCollector.getCountry(context));
-        authentication.setDeviceId(DeviceCollector.getDeviceId(context, apiKey));
-        authentication.setCarrierName(DeviceCollector.getCarrierName(context));
-        Sender.sendSession(authentication, NetworkResource.SESSION_URL);
-    }
-
-    public static void SendException(Exception e, String Tag, ErrorRank rank) {
-        ErrorReport report = ErrorReportFactory.createErrorReport(e, Tag, rank,
-                HoneyQAData.APP_CONTEXT);
-
-        try {
-            Sender.sendException(report, NetworkResource.EXCEPTION_URL);
-        } catch (JSONException e1) {
-            // TODO Auto-generated catch block
-            e1.printStackTrace();
-        }
+    /**
+     * Build session on upload worker, device profile is computed there on first use.
+     * The session is stored and uploaded with other pending sessions when due.
+     *
+     * @param startup initialization cost, sent with first session only
+     */
+    private static void sendSession(final Context context, final String apiKey,
+                                    final JSONStartup startup) {
+        // device id is derived from the api key, so this is one task per api key and device
+        UploadScheduler.schedule(NetworkResource.SESSION_URL + "|" + apiKey, new Runnable() {
+            @Override
+            public void run() {
+                DeviceProfile profile = DeviceProfile.get(context);
+                Authentication authentication = new Authentication();
+                authentication.setKey(apiKey);
+                authentication.setAppVersion(profile.appVersion);
+                authentication.setAndroidVersion(profile.osVersion);
+                authentication.setModel(profile.model);
+                authentication.setManufacturer(profile.manufacturer);
+                authentication.setCountryCode(profile.country);
+                authentication.setDeviceId(profile.apiKey.equals(apiKey) ? profile.deviceId
+                        : DeviceCollector.getDeviceId(context, apiKey));
+                authentication.setCarrierName(profile.carrierName);
+                authentication.setProfile(FrameSampler.takeProfile(context));
+                authentication.setStartup(startup);
+                Sender.sendSession(context, authentication);
+            }
+        });
+    }
 
+    /**
+     * Report main thread stalls longer than thresholdMillis, 0 stops the watchdog
+     */
+    public static void SetANRWatchdog(long thresholdMillis) {
+        HoneyQAData.ANRThreshold = thresholdMillis;
+        if (thresholdMillis <= 0)
+            ANRWatchdog.stop();
+        else if (!HoneyQAData.FIRST_CONNECT)
+            ANRWatchdog.start(HoneyQAData.APP_CONTEXT);
+    }
+
+    /**
+     * Sample main thread frames, the profile is uploaded with sessions. API 16+.
+     *
+     * @param budgetMillis frames longer than this are sampled for hot frames
+     */
+    public static void SetFrameSampling(boolean enable, long budgetMillis) {
+        HoneyQAData.FrameSampling = enable;
+        HoneyQAData.FrameBudget = budgetMillis;
+        if (!enable)
+            FrameSampler.stop();
+        else if (!HoneyQAData.FIRST_CONNECT)
+            FrameSampler.start(HoneyQAData.APP_CONTEXT);
+    }
+
+    /**
+     * Report handled exception, subject to sampling and rate limits of
+     * {@link ExceptionRateLimiter}. Only breadcrumbs and time are taken on the calling
+     * thread, the report is built and saved on the upload worker.
+     */
+    public static void SendException(final Exception e, final String Tag, final ErrorRank rank) {
+        final String fingerprint = ExceptionRateLimiter.acquire(e, rank);
+        if (fingerprint == null)
+            return;
+        final List<EventPath> eventpaths = EventPathManager.GetErrorEventPath();
+        final long millis = System.currentTimeMillis();
+        Runnable build = new Runnable() {
+            @Override
+            public void run() {
+                Context context = HoneyQAData.APP_CONTEXT;
+                ErrorReport report = ErrorReportFactory.createExceptionReport(e, Tag, rank,
+                        context, fingerprint);
+                report.ErrorData.eventpaths = eventpaths;
+                report.ErrorData.datetime = DateCollector.GetDate(millis);
+                if (Sender.saveOccurrence(context, report, false)) {
+                    Sender.flushExceptions(context, NetworkResource.EXCEPTION_URL);
+                    return;
+                }
+                ErrorReportFactory.completeErrorReport(report, context);
+                try {
+                    Sender.sendException(report, NetworkResource.EXCEPTION_URL);
+                } catch (JSONException e1) {
+                    e1.printStackTrace();
+                }
+            }
+        };
+        synchronized (handledExceptions) {
+            if (handledExceptions.size() >= HoneyQAData.MaxPendingUploads) {
+                handledExceptions.removeFirst();
+                Log.e(HoneyQAData.HONEYQA_SDK_LOG, "exception queue full, dropped oldest exception");
+            }
+            handledExceptions.add(build);
+        }
+        // one stable key, queued exceptions are built by a single task
+        UploadScheduler.schedule(HANDLED_EXCEPTIONS, new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Runnable next;
+                    synchronized (handledExceptions) {
+                        next = handledExceptions.poll();
+                    }
+                    if (next == null)
+                        return;
+                    next.run();
+                }
+            }
+        });
     }
 
     public static void SendException(Exception e) {
@@ -137,10 +296,115 @@ public final class HoneyQAClient {
         SendException(e, Tag, ErrorRank.Critical);
     }
 
+    /**
+     * Compress uploads with gzip, server must accept Content-Encoding: gzip.
+     * Bodies smaller than {@link HoneyQAData#CompressThreshold} bytes are sent as is.
+     */
+    public static void SetCompression(boolean isCompress) {
+        HoneyQAData.isCompress = isCompress;
+    }
+
+    public static void SetCompression(boolean isCompress, int threshold) {
+        HoneyQAData.isCompress = isCompress;
+        HoneyQAData.CompressThreshold = threshold;
+    }
+
+    /**
+     * Time in ms an uncaught exception may spend on device data and logs after the
+     * exception itself is saved. Stages which do not fit are skipped.
+     */
+    public static void SetCrashTimeBudget(long millis) {
+        HoneyQAData.CrashTimeBudget = millis;
+    }
+
+    /**
+     * Add milliseconds to report and breadcrumb times, yyyy-MM-dd HH:mm:ss.SSS
+     */
+    public static void SetTimestampMillis(boolean millis) {
+        HoneyQAData.TimestampMillis = millis;
+    }
+
+    /**
+     * Keep last capacity breadcrumbs in memory, older ones are dropped or,
+     * with spillToDisk, appended to a file in the cache directory
+     */
+    public static void SetEventHistory(int capacity, boolean spillToDisk) {
+        HoneyQAData.SpillEventHistory = spillToDisk;
+        EventPathManager.SetMaxEventHistory(capacity);
+    }
+
+    /**
+     * Send stack traces as printStackTrace text, on by default. Turn off to send only
+     * the smaller structured form, for servers which read it.
+     */
+    public static void SetTextCallstack(boolean text) {
+        HoneyQAData.TextCallstack = text;
+    }
+
+    /**
+     * Record class, method and line of breadcrumb callers, on by default. Costs a stack
+     * walk per breadcrumb and log call, turn off to keep only time and label.
+     */
+    public static void SetEventCallSite(boolean capture) {
+        HoneyQAData.EventCallSite = capture;
+    }
+
+    /**
+     * Report only a fraction of handled exceptions of rank
+     *
+     * @param rate 0 ~ 1, 1 reports all
+     */
+    public static void SetSampleRate(ErrorRank rank, float rate) {
+        HoneyQAData.SampleRates[rank.ordinal()] = Math.max(0f, Math.min(1f, rate));
+    }
+
+    /**
+     * Limit handled exceptions to burst at once, refilled at perMinute. The same limit
+     * applies per crash fingerprint with fingerprintBurst and fingerprintPerMinute.
+     */
+    public static void SetRateLimit(int burst, double perMinute,
+                                    int fingerprintBurst, double fingerprintPerMinute) {
+        HoneyQAData.ExceptionBurst = burst;
+        HoneyQAData.ExceptionsPerMinute = perMinute;
+        HoneyQAData.FingerprintBurst = fingerprintBurst;
+        HoneyQAData.FingerprintsPerMinute = fingerprintPerMinute;
+    }
+
+    /**
+     * Upload stored sessions at most once per intervalMillis, sessions of a day are
+     * counted in one record meanwhile. 0 uploads every session when it starts.
+     */
+    public static void SetSessionUploadInterval(long intervalMillis) {
+        HoneyQAData.SessionUploadInterval = intervalMillis;
+    }
+
+    /**
+     * Send full report only for first occurrence of a crash within windowMillis,
+     * repeats are sent as compact occurrence records. 0 sends every report in full.
+     */
+    public static void SetDeduplication(long windowMillis) {
+        HoneyQAData.DedupWindow = windowMillis;
+    }
+
+    /**
+     * Keep at most depth frames per throwable of a callstack, e.g. for StackOverflowError
+     */
+    public static void SetMaxStackDepth(int depth) {
+        HoneyQAData.MaxStackDepth = depth;
+    }
+
     public static void SetLogCat(boolean toggleLog) {
         HoneyQAData.ToggleLogCat = toggleLog;
     }
 
+    /**
+     * Attach last log lines to reports. Lines come from logcat; lines logged through
+     * HoneyQAClient are attached instead only when logcat is off, see
+     * {@link #SetReadLogcat}, or yields nothing. Filter does not apply to those.
+     *
+     * @param Line   number of lines
+     * @param Filter logcat filterspecs separated by spaces, e.g. "MyApp:D *:S"
+     */
     public static void SetLogging(int Line, String Filter) {
         HoneyQAData.TransferLog = true;
         HoneyQAData.LogLine = Line;
@@ -152,6 +416,14 @@ public final class HoneyQAClient {
         HoneyQAData.LogLine = Line;
     }
 
+    /**
+     * Read logcat for report logs, on by default. When off, only lines logged through
+     * HoneyQAClient are attached and no logcat process is spawned on the crash path.
+     */
+    public static void SetReadLogcat(boolean read) {
+        HoneyQAData.ReadLogcat = read;
+    }
+
     public static int v(String tag, String Msg, Throwable tr) {
         return log(LogLevel.Verbose, tag, Msg, tr);
     }
@@ -234,6 +506,7 @@ public final class HoneyQAClient {
 
     private static int log(LogLevel level, String tag, String Msg, Throwable tr) {
         EventPathManager.CreateEventPath(3, "");
+        LogBuffer.add(level.ordinal(), tag, Msg, tr);
 
         if (HoneyQAData.ToggleLogCat)
             return loglevel(level, tag, Msg, tr);
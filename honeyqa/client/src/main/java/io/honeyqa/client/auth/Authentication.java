@@ -1,9 +1,15 @@
 package io.honeyqa.client.auth;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 import io.honeyqa.client.json.JSONInterface;
+import io.honeyqa.client.json.JSONStartup;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okio.Buffer;
 
 public class Authentication implements JSONInterface {
     private String mKey;
@@ -14,6 +20,10 @@ public class Authentication implements JSONInterface {
     private String mCarrierName;  // 통신사
     private String mCountryCode; // 국가 정보
     private String mAndroidVersion; // 안드로이드 버전 
+    private JSONObject mProfile; // main thread frame profile, may be null
+    private JSONArray mStartups; // SDK initialization cost per launch, may be null
+    private String mDate; // UTC day of the sessions, yyyy-MM-dd
+    private int mCount = 1; // sessions started that day
 
     
     // TODO 국가 정보, 통신
@@ -29,12 +39,40 @@ public class Authentication implements JSONInterface {
             object.put("carrier_name", getCarrierName());
             object.put("country_code", getCountryCode());
             object.put("android_version", getAndroidVersion());
+            if (mDate != null)
+                object.put("date", mDate);
+            object.put("count", mCount);
+            if (mProfile != null)
+                object.put("profile", mProfile);
+            if (mStartups != null)
+                object.put("startups", mStartups);
 
         } catch (JSONException e) {
         }
         return object;
     }
 
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("apikey").value(getKey())
+                .name("appversion").value(getAppVersion())
+                .name("device_id").value(getDevieId())
+                .name("model").value(getModel())
+                .name("manufacturer").value(getManufacturer())
+                .name("carrier_name").value(getCarrierName())
+                .name("country_code").value(getCountryCode())
+                .name("android_version").value(getAndroidVersion());
+        if (mDate != null)
+            writer.name("date").value(mDate);
+        writer.name("count").value(mCount);
+        if (mProfile != null)
+            writer.name("profile").rawValue(new Buffer().writeUtf8(mProfile.toString()));
+        if (mStartups != null)
+            writer.name("startups").rawValue(new Buffer().writeUtf8(mStartups.toString()));
+        writer.endObject();
+    }
+
 
 	/**
 	 * @return the key
@@ -148,6 +186,95 @@ public class Authentication implements JSONInterface {
 	}
 
 
+	/**
+	 * @return the frame profile
+	 */
+	public JSONObject getProfile() {
+		return mProfile;
+	}
+
+
+	/**
+	 * @param profile frame profile to upload with session
+	 */
+	public void setProfile(JSONObject profile) {
+		mProfile = profile;
+	}
+
+
+	/**
+	 * @return initialization cost per launch, oldest first
+	 */
+	public JSONArray getStartups() {
+		return mStartups;
+	}
+
+
+	/**
+	 * @param startup initialization cost of this launch to upload with session
+	 */
+	public void setStartup(JSONStartup startup) {
+		mStartups = startup != null ? new JSONArray().put(startup.toJSONObject()) : null;
+	}
+
+
+	/**
+	 * @param startups initialization cost per launch, oldest first
+	 */
+	public void setStartups(JSONArray startups) {
+		mStartups = startups;
+	}
+
+
+	/**
+	 * Keep initialization cost of earlier launches before this one, at most max in total,
+	 * the oldest are dropped
+	 */
+	public void addEarlierStartups(JSONArray earlier, int max) {
+		if (earlier == null)
+			return;
+		JSONArray startups = new JSONArray();
+		int current = mStartups != null ? mStartups.length() : 0;
+		for (int i = Math.max(earlier.length() + current - max, 0); i < earlier.length(); i++)
+			startups.put(earlier.opt(i));
+		for (int i = 0; i < current; i++)
+			startups.put(mStartups.opt(i));
+		mStartups = startups;
+	}
+
+
+	/**
+	 * @return the UTC day of the sessions
+	 */
+	public String getDate() {
+		return mDate;
+	}
+
+
+	/**
+	 * @param date UTC day of the sessions, yyyy-MM-dd
+	 */
+	public void setDate(String date) {
+		mDate = date;
+	}
+
+
+	/**
+	 * @return the number of sessions
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+
+	/**
+	 * @param count number of sessions started that day
+	 */
+	public void setCount(int count) {
+		mCount = count;
+	}
+
+
 	/**
 	 * @return the androidVersion
 	 */
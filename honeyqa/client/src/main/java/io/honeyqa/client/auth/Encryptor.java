@@ -1,7 +1,7 @@
 package io.honeyqa.client.auth;
 
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
@@ -10,7 +10,6 @@ import java.security.NoSuchAlgorithmException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -18,13 +17,20 @@ import javax.crypto.spec.SecretKeySpec;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
-import android.os.Handler;
-import android.os.Message;
+import android.os.SystemClock;
 import android.util.Base64;
 import android.util.Log;
 
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.Base64Sink;
+import io.honeyqa.client.network.CipherSink;
 import io.honeyqa.client.network.Network;
 import io.honeyqa.client.network.NetworkResource;
+import io.honeyqa.client.network.UploadScheduler;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Okio;
 
 public class Encryptor {
 
@@ -32,68 +38,133 @@ public class Encryptor {
     public static final String ENCRYPTION_BASE_KEY = "ENTRYPTION_BASE_KEY";
     public static final String ENCRYPTION_TOKEN = "ENCRYPTION_PRIVATE_KEY";
 
-    public static String baseKey;
-    public static String token;
+    public static volatile String baseKey;
+    public static volatile String token;
+    private static boolean exchanging = false;
+    // consecutive failed exchanges and elapsedRealtime before which none is started
+    private static int failures = 0;
+    private static long retryAt = 0;
 
-    private static Cipher encryptor;
-    private static Cipher decryptor;
-    private static String IV = "0000000000000000";
+    private static final long MIN_RETRY_DELAY = 30 * 1000;
+    private static final long MAX_RETRY_DELAY = 30 * 60 * 1000;
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final IvParameterSpec IV = new IvParameterSpec("0000000000000000".getBytes());
+    private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
     private static SecretKey secureKey;
+    private static String secureKeySource;
 
     public static final String ENC_DATA = "enc_data";
 
-    public static void requestToken(final Context context) throws Exception {
+    /**
+     * Exchange keys with server on upload worker unless a token is already set. Calls
+     * made while an exchange is running share it. After a failed exchange, calls are
+     * ignored for a delay doubling with every failure, from 30 s up to 30 min; a
+     * successful exchange resets it. When the token arrives, uploads held for it are
+     * released. The exchange task is not a {@link Network} request, so the upload queue
+     * never drops it and exchanging is always cleared.
+     */
+    public static void requestToken(Context context) {
+        requestToken(context, false);
+    }
+
+    /**
+     * Exchange keys for a new token even when one is set, ignoring the retry delay
+     */
+    public static void renewToken(Context context) {
+        requestToken(context, true);
+    }
+
+    private static void requestToken(final Context context, boolean renew) {
+        synchronized (Encryptor.class) {
+            if (exchanging)
+                return;
+            if (!renew && (hasToken() || SystemClock.elapsedRealtime() < retryAt))
+                return;
+            exchanging = true;
+        }
+        UploadScheduler.schedule(NetworkResource.REQUEST_KEY_URL, new Runnable() {
+            @Override
+            public void run() {
+                boolean exchanged = false;
+                try {
+                    exchanged = exchangeKey(context);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    synchronized (Encryptor.class) {
+                        exchanging = false;
+                        if (exchanged) {
+                            failures = 0;
+                            retryAt = 0;
+                        } else {
+                            long delay = MIN_RETRY_DELAY << Math.min(failures, 10);
+                            retryAt = SystemClock.elapsedRealtime()
+                                    + Math.min(delay, MAX_RETRY_DELAY);
+                            failures++;
+                        }
+                    }
+                }
+                if (exchanged)
+                    UploadScheduler.releaseWaitingForKey();
+            }
+        });
+    }
+
+    /**
+     * @return true when base key and token are set
+     */
+    public static boolean hasToken() {
+        return baseKey != null && token != null;
+    }
+
+    /**
+     * Generate RSA key pair, request token and store it, on the calling thread
+     *
+     * @return true when token is received
+     */
+    private static boolean exchangeKey(Context context) throws Exception {
         // Generate RSA key pairs
         KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
         keyGen.initialize(1024);
-        final KeyPair keypair = keyGen.genKeyPair();
+        KeyPair keypair = keyGen.genKeyPair();
         byte[] publicKey = keypair.getPublic().getEncoded();
 
         String public_key = "-----BEGIN PUBLIC KEY-----\\n"
                 + Base64.encodeToString(publicKey, Base64.NO_WRAP)
                 + "\\n-----END PUBLIC KEY-----\\n";
         // request Key
-        String url = NetworkResource.REQUEST_KEY_URL;
         String data = "{\"public\":\"" + public_key + "\"}";
-        Handler handler = new Handler() {
-            public void handleMessage(Message msg) {
-                try {
-                    String response = (String) msg.obj;
-                    // token parse
-                    if (!response.contains(ENC_DATA)) {
-                        Log.v("", "enc data does not exist");
-                        return;
-                    }
-                    String enc_data = Encryptor.getJsonToken(response, ENC_DATA);
+        Network network = new Network();
+        network.setNetworkOption(NetworkResource.REQUEST_KEY_URL, data, Network.Method.POST, false);
+        network.setReadResponse(true);
+        network.execute();
+        String response = network.getResponseBody();
 
-                    Cipher rsa;
-                    rsa = Cipher.getInstance("RSA");
-                    rsa.init(Cipher.DECRYPT_MODE, keypair.getPrivate());
-                    byte[] utf8 = rsa.doFinal(Base64.decode(enc_data, Base64.NO_WRAP));
-                    String enc_data2 = new String(utf8, "UTF8");
+        // token parse
+        if (response == null || !response.contains(ENC_DATA)) {
+            Log.v("", "enc data does not exist");
+            return false;
+        }
+        String enc_data = Encryptor.getJsonToken(response, ENC_DATA);
 
-                    Encryptor.baseKey = Encryptor.getJsonToken(enc_data2, "basekey");
-                    Encryptor.token = Encryptor.getJsonToken(enc_data2, "token");
+        Cipher rsa = Cipher.getInstance("RSA");
+        rsa.init(Cipher.DECRYPT_MODE, keypair.getPrivate());
+        byte[] utf8 = rsa.doFinal(Base64.decode(enc_data, Base64.NO_WRAP));
+        String enc_data2 = new String(utf8, "UTF8");
 
-                    SharedPreferences prefs = context.getSharedPreferences(Encryptor.ENCRYPTION,
-                            Context.MODE_PRIVATE);
-                    Editor editor = prefs.edit();
-                    editor.putString(Encryptor.ENCRYPTION_BASE_KEY, Encryptor.baseKey);
-                    editor.putString(Encryptor.ENCRYPTION_TOKEN, Encryptor.token);
-                    editor.commit();
+        Encryptor.baseKey = Encryptor.getJsonToken(enc_data2, "basekey");
+        Encryptor.token = Encryptor.getJsonToken(enc_data2, "token");
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        };
-        Network network = new Network();
-        network.setNetworkOption(url, data, Network.Method.POST, false);
-        network.setHandler(handler);
-        network.start();
+        SharedPreferences prefs = context.getSharedPreferences(Encryptor.ENCRYPTION,
+                Context.MODE_PRIVATE);
+        Editor editor = prefs.edit();
+        editor.putString(Encryptor.ENCRYPTION_BASE_KEY, Encryptor.baseKey);
+        editor.putString(Encryptor.ENCRYPTION_TOKEN, Encryptor.token);
+        editor.commit();
+        return true;
     }
 
-
     private static String getJsonToken(String json, String key) {
         String wrapped_key = "\"" + key + "\"";
         int start_idx = json.indexOf(wrapped_key) + wrapped_key.length();
@@ -103,68 +174,54 @@ public class Encryptor {
     }
 
     /**
-     * @return AEC-256-cbc-pkcs5padding + BASE64
-     * @throws NoSuchPaddingException
-     * @throws NoSuchAlgorithmException
-     * @throws InvalidAlgorithmParameterException
-     * @throws InvalidKeyException
+     * @return JSON envelope of data, AEC-256-cbc-pkcs5padding + BASE64
+     */
+    public static String encrypt(String data) throws GeneralSecurityException, IOException {
+        Buffer envelope = new Buffer();
+        writeEnvelope(envelope, HQ_RequestBody.create(Network.JSON, data));
+        return envelope.readUtf8();
+    }
+
+    /**
+     * Stream {"token":..,"enc_data":"<base64>","src_len":n} of plaintext body into sink.
+     * Body is encrypted and encoded chunk by chunk while it is written, src_len is
+     * written last, when it is known.
      */
-    public static String encrypt(String data) throws InvalidKeyException,
-            NoSuchAlgorithmException, NoSuchPaddingException,
-            InvalidAlgorithmParameterException {
+    public static void writeEnvelope(BufferedSink sink, HQ_RequestBody plaintext)
+            throws GeneralSecurityException, IOException {
+        String token = Encryptor.token;
         if (baseKey == null || token == null) {
             throw new IllegalArgumentException(
                     "you dont initialize basekey or token");
         }
-        data = "{  \"token\":\"" + token + "\", \"enc_data\" : \""
-                + encrypt(baseKey, data.getBytes()) + "\", \"src_len\":"
-                + data.getBytes().length + " }";
-        return data;
+        JSONStreamWriter writer = new JSONStreamWriter(sink);
+        writer.beginObject().name("token").value(token).name(ENC_DATA);
+        Base64Sink base64 = writer.beginBase64Value();
+        BufferedSink encoded = Okio.buffer(base64);
+        CipherSink cipher = newEncryptingSink(encoded);
+        BufferedSink plain = Okio.buffer(cipher);
+        plaintext.writeTo(plain);
+        plain.emit();
+        cipher.finish();
+        encoded.emit();
+        writer.endBase64Value(base64);
+        writer.name("src_len").value(cipher.bytesWritten()).endObject();
     }
 
-    private static String encrypt(String baseKey, byte[] src)
-            throws NoSuchAlgorithmException, NoSuchPaddingException,
-            InvalidKeyException, InvalidAlgorithmParameterException {
-        byte[] key = SHA256(baseKey);
-        if (secureKey == null) {
-            secureKey = new SecretKeySpec(key, "AES");
-        }
-        if (encryptor == null) {
-            encryptor = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            encryptor.init(Cipher.ENCRYPT_MODE, secureKey, new IvParameterSpec(
-                    IV.getBytes()));
-        }
-        byte[] encrypted = null;
-        try {
-            encrypted = encryptor.doFinal(src);
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        }
-        return Base64.encodeToString(encrypted, Base64.NO_WRAP);
+    /**
+     * @return sink encrypting with current base key, uses the calling thread's cipher
+     * until {@link CipherSink#finish()}
+     */
+    public static CipherSink newEncryptingSink(BufferedSink sink) throws GeneralSecurityException {
+        return new CipherSink(getCipher(Cipher.ENCRYPT_MODE, baseKey), sink);
     }
 
     /**
      * @param src
      * @return source data
-     * @throws NoSuchPaddingException
-     * @throws NoSuchAlgorithmException
-     * @throws InvalidAlgorithmParameterException
-     * @throws InvalidKeyException
      */
-    public byte[] decrypt(String baseKey, String src)
-            throws NoSuchAlgorithmException, NoSuchPaddingException,
-            InvalidKeyException, InvalidAlgorithmParameterException {
-        byte[] key = SHA256(baseKey);
-        if (secureKey == null) {
-            secureKey = new SecretKeySpec(key, "AES");
-        }
-        if (decryptor == null) {
-            decryptor = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            decryptor.init(Cipher.DECRYPT_MODE, secureKey, new IvParameterSpec(
-                    IV.getBytes()));
-        }
+    public byte[] decrypt(String baseKey, String src) throws GeneralSecurityException {
+        Cipher decryptor = getCipher(Cipher.DECRYPT_MODE, baseKey);
         byte[] dec = Base64.decode(src, 0);
         byte[] ret = null;
         try {
@@ -178,6 +235,32 @@ public class Encryptor {
         return ret;
     }
 
+    /**
+     * Cipher objects are not thread-safe, each thread gets its own, initialized per use
+     */
+    private static Cipher getCipher(int mode, String baseKey) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+            ciphers.set(cipher);
+        }
+        cipher.init(mode, getSecureKey(baseKey), IV);
+        return cipher;
+    }
+
+    /**
+     * @return AES key derived from baseKey, SHA256 is computed once per base key
+     */
+    private static synchronized SecretKey getSecureKey(String baseKey) {
+        if (baseKey == null)
+            throw new IllegalArgumentException("you dont initialize basekey or token");
+        if (secureKey == null || !baseKey.equals(secureKeySource)) {
+            secureKey = new SecretKeySpec(SHA256(baseKey), "AES");
+            secureKeySource = baseKey;
+        }
+        return secureKey;
+    }
+
     private static byte[] SHA256(String str) {
         try {
             MessageDigest sh = MessageDigest.getInstance("SHA-256");
@@ -189,4 +272,4 @@ public class Encryptor {
         }
         return null;
     }
-}
\ No newline at end of file
+}
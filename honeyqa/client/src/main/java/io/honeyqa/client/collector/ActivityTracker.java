@@ -0,0 +1,73 @@
+package io.honeyqa.client.collector;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * Remembers the last resumed activity through activity lifecycle callbacks (API 14+),
+ * so reports know it without loading classes of the crashing stack.
+ */
+public class ActivityTracker {
+
+    private static boolean started = false;
+    private static volatile String lastActivity;
+
+    /**
+     * Register lifecycle callbacks, does nothing below API 14
+     */
+    public static synchronized void start(Context context) {
+        if (started || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+            return;
+        Context app = context.getApplicationContext();
+        if (!(app instanceof Application))
+            return;
+        started = true;
+        register((Application) app);
+    }
+
+    /**
+     * @return class name of last resumed activity, null when unknown
+     */
+    public static String getLastActivity() {
+        return lastActivity;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void register(Application application) {
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                lastActivity = activity.getClass().getName();
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+                lastActivity = activity.getClass().getName();
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+    }
+}
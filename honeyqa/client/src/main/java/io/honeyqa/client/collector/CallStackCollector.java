@@ -1,67 +1,112 @@
 package io.honeyqa.client.collector;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import io.honeyqa.client.data.CallStackData;
+import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.json.JSONStackTrace;
 
 public class CallStackCollector {
 
-	public static String GetCallStack(Throwable Errorthrow ) 
+	private static final int MAX_CACHED_CLASSES = 256;
+	private static final String[] NON_ACTIVITY_PREFIXES = {
+			"java.", "javax.", "dalvik.", "libcore.", "sun.", "kotlin.", "kotlinx.", "io.reactivex."};
+
+	/**
+	 * class name -> is activity, least recently used entries are evicted
+	 */
+	private static final Map<String, Boolean> activityClasses =
+			new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+					return size() > MAX_CACHED_CLASSES;
+				}
+			};
+
+	/**
+	 * @return printStackTrace text of the throwable, built from its structured trace
+	 */
+	public static String GetCallStack(Throwable Errorthrow)
 	{
-	    Writer callstackwirter = new StringWriter();
-        PrintWriter callstackprinter = new PrintWriter(callstackwirter);
-        Errorthrow.printStackTrace(callstackprinter);
-        String CallStackString = callstackwirter.toString();
-        callstackprinter.close();
-        return CallStackString; 
+		return GetStackTrace(Errorthrow).toString();
 	}
-	
-	
-	public static CallStackData ParseStackTrace(Throwable errorThrow,String callStackString)
+
+	/**
+	 * @return structured trace, at most {@link HoneyQAData#MaxStackDepth} frames per throwable
+	 */
+	public static JSONStackTrace GetStackTrace(Throwable Errorthrow)
+	{
+		return new JSONStackTrace(Errorthrow, HoneyQAData.MaxStackDepth);
+	}
+
+	public static CallStackData ParseStackTrace(Throwable errorThrow, JSONStackTrace stackTrace)
 	{
-		boolean RunTimeError = false;
 		CallStackData data = new CallStackData();
-        Throwable cause = errorThrow.getCause();
-        if(cause != null)
-            RunTimeError = true;
-        
-        Throwable recordthrow;
-        if(RunTimeError)
-        	recordthrow = cause;
-        else
-        	recordthrow = errorThrow;
-                
-        String [] errorname = callStackString.split("\n");
-        data.ErrorName = errorname[0].toString(); 
-        StackTraceElement[] ErrorElements = recordthrow.getStackTrace();
-        data.ClassName = ErrorElements[0].getClassName();
-        data.Line = ErrorElements[0].getLineNumber();
-        String activityclass = SearchCallstackinActivity(ErrorElements);
-        data.ActivityName = activityclass;
-        return data;
+		// top frame of direct cause tells where the error really happened
+		Throwable recordthrow = errorThrow.getCause() != null ? errorThrow.getCause() : errorThrow;
+
+		data.ErrorName = stackTrace.getName();
+		StackTraceElement[] ErrorElements = recordthrow.getStackTrace();
+		if (ErrorElements.length > 0) {
+			data.ClassName = ErrorElements[0].getClassName();
+			data.Line = ErrorElements[0].getLineNumber();
+		} else {
+			data.ClassName = "";
+			data.Line = -1;
+		}
+		String activityclass = ActivityTracker.getLastActivity();
+		if (activityclass == null)
+			activityclass = SearchCallstackinActivity(ErrorElements);
+		data.ActivityName = activityclass;
+		return data;
 	}
 	
+	/**
+	 * @return first activity class of the stack, "" when none
+	 */
 	public static String SearchCallstackinActivity(StackTraceElement[] ErrorElements)
 	{
 		String Activityclassname = "";
 		for(int i = 0 ; i < ErrorElements.length ; i++)
 		{
 			String classname = ErrorElements[i].getClassName();
-			try{
-				Class klass = Class.forName(classname);
-				if(android.app.Activity.class.isAssignableFrom(klass))
-				{
-					Activityclassname = classname;
-					break;
-				}
-			}
-			catch(Exception e)
+			if(isActivity(classname))
 			{
-				
+				Activityclassname = classname;
+				break;
 			}
 		}
 		return Activityclassname;
 	}
+
+	/**
+	 * Cached lookup, each class is loaded (without initialization) at most once
+	 */
+	private static boolean isActivity(String classname)
+	{
+		for(String prefix : NON_ACTIVITY_PREFIXES)
+		{
+			if(classname.startsWith(prefix))
+				return false;
+		}
+		synchronized (activityClasses) {
+			Boolean cached = activityClasses.get(classname);
+			if(cached != null)
+				return cached;
+		}
+		boolean activity;
+		try{
+			Class<?> klass = Class.forName(classname, false, CallStackCollector.class.getClassLoader());
+			activity = android.app.Activity.class.isAssignableFrom(klass);
+		}
+		catch(Throwable e)
+		{
+			activity = false;
+		}
+		synchronized (activityClasses) {
+			activityClasses.put(classname, activity);
+		}
+		return activity;
+	}
 }
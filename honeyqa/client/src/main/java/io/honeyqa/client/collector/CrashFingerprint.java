@@ -0,0 +1,61 @@
+package io.honeyqa.client.collector;
+
+import java.util.Locale;
+
+/**
+ * Stable identity of a crash: exception type and top app frames of the throwable
+ * where the error happened (direct cause when there is one). Messages are left out,
+ * they often carry ids or addresses which differ on every crash.
+ */
+public class CrashFingerprint {
+
+    private static final String[] FRAMEWORK_PREFIXES = {
+            "java.", "javax.", "dalvik.", "libcore.", "sun.", "android.", "com.android.",
+            "kotlin.", "kotlinx.", "io.honeyqa.client."};
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * @param appFrames number of app frames included
+     * @return 16 hex digits
+     */
+    public static String compute(Throwable throwable, int appFrames) {
+        Throwable record = throwable.getCause() != null ? throwable.getCause() : throwable;
+        long hash = hash(FNV_OFFSET, record.getClass().getName());
+        int included = 0;
+        for (StackTraceElement element : record.getStackTrace()) {
+            if (included >= appFrames)
+                break;
+            if (isFramework(element.getClassName()))
+                continue;
+            hash = hash(hash, element.getClassName());
+            hash = hash(hash, element.getMethodName());
+            hash = hash(hash, element.getLineNumber());
+            included++;
+        }
+        return String.format(Locale.US, "%016x", hash);
+    }
+
+    static boolean isFramework(String className) {
+        for (String prefix : FRAMEWORK_PREFIXES) {
+            if (className.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    // FNV-1a over chars, separator keeps "ab"+"c" apart from "a"+"bc"
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash(hash, -1);
+    }
+
+    private static long hash(long hash, int value) {
+        hash ^= value;
+        return hash * FNV_PRIME;
+    }
+}
@@ -1,21 +1,112 @@
 package io.honeyqa.client.collector;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.TimeZone;
-
 import android.content.Context;
 
+import io.honeyqa.client.data.HoneyQAData;
+
+/**
+ * UTC timestamps as yyyy-MM-dd HH:mm:ss, optionally with .SSS.
+ * <p/>
+ * Formatting is done arithmetically, without Calendar, TimeZone or SimpleDateFormat, so
+ * it is thread-safe and allocates only the result. The last formatted second is cached.
+ */
 public class DateCollector {
 
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private static final class Second {
+        final long second;
+        final String text;
+
+        Second(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    private static volatile Second cached = new Second(Long.MIN_VALUE, null);
+
+    /**
+     * @return current UTC date, with milliseconds when {@link HoneyQAData#TimestampMillis} is set
+     */
     public static String GetDateYYMMDDHHMMSS(Context context) {
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        Date currentLocalTime = cal.getTime();
-        DateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        date.setTimeZone(TimeZone.getTimeZone("UTC"));
-        String localTime = date.format(currentLocalTime);
-        return localTime;
+        return GetDate(System.currentTimeMillis());
+    }
+
+    /**
+     * @param millis epoch time in milliseconds
+     * @return UTC date, with milliseconds when {@link HoneyQAData#TimestampMillis} is set
+     */
+    public static String GetDate(long millis) {
+        return HoneyQAData.TimestampMillis ? GetDateYYMMDDHHMMSSSSS(millis)
+                : GetDateYYMMDDHHMMSS(millis);
+    }
+
+    /**
+     * @param millis epoch time in milliseconds
+     * @return UTC date formatted as yyyy-MM-dd HH:mm:ss
+     */
+    public static String GetDateYYMMDDHHMMSS(long millis) {
+        long second = floorDiv(millis, 1000);
+        Second last = cached;
+        if (last.second == second)
+            return last.text;
+        char[] text = new char[19];
+        format(text, millis);
+        String result = new String(text);
+        cached = new Second(second, result);
+        return result;
+    }
+
+    /**
+     * @param millis epoch time in milliseconds
+     * @return UTC date formatted as yyyy-MM-dd HH:mm:ss.SSS
+     */
+    public static String GetDateYYMMDDHHMMSSSSS(long millis) {
+        char[] text = new char[23];
+        format(text, millis);
+        text[19] = '.';
+        put(text, 20, (int) (millis - floorDiv(millis, 1000) * 1000), 3);
+        return new String(text);
+    }
+
+    private static void format(char[] text, long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+
+        // civil date from days since 1970-01-01, proleptic Gregorian calendar
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        put(text, 0, year, 4);
+        text[4] = '-';
+        put(text, 5, month, 2);
+        text[7] = '-';
+        put(text, 8, day, 2);
+        text[10] = ' ';
+        put(text, 11, secondOfDay / 3600, 2);
+        text[13] = ':';
+        put(text, 14, secondOfDay / 60 % 60, 2);
+        text[16] = ':';
+        put(text, 17, secondOfDay % 60, 2);
+    }
+
+    private static void put(char[] text, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
     }
 }
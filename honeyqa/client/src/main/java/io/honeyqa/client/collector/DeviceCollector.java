@@ -17,6 +17,7 @@ import android.location.Geocoder;
 import android.location.Location;
 import android.location.LocationManager;
 import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Environment;
 import android.os.StatFs;
 import android.provider.Settings;
@@ -180,6 +181,27 @@ public class DeviceCollector {
 		return use;
 	}
 
+	/**
+	 * @return true when a network is connected, or when connectivity cannot be checked
+	 * because ACCESS_NETWORK_STATE is not granted
+	 */
+	static public boolean isConnected(Context context) {
+		try {
+			PackageManager packagemanager = context.getPackageManager();
+			if (packagemanager.checkPermission(
+					"android.permission.ACCESS_NETWORK_STATE",
+					context.getPackageName()) != 0)
+				return true;
+			ConnectivityManager manager = (ConnectivityManager) context
+					.getSystemService(Context.CONNECTIVITY_SERVICE);
+			NetworkInfo info = manager.getActiveNetworkInfo();
+			return info != null && info.isConnected();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	}
+
 	static public boolean getMobileNetwork(Context context) {
 		return getNetwork(context, ConnectivityManager.TYPE_MOBILE);
 	}
@@ -0,0 +1,72 @@
+package io.honeyqa.client.collector;
+
+import android.content.Context;
+
+import io.honeyqa.client.data.HoneyQAData;
+
+/**
+ * Device attributes which do not change while the process lives.
+ * Computed once and shared by every report and session.
+ */
+public class DeviceProfile {
+
+    private static volatile DeviceProfile profile;
+
+    public final String apiKey;
+    public final String model;
+    public final String manufacturer;
+    public final String osVersion;
+    public final String kernelVersion;
+    public final String appVersion;
+    public final String deviceId;
+    public final String carrierName;
+    public final String country;
+    public final String locale;
+    public final float xdpi;
+    public final float ydpi;
+    public final boolean rooted;
+
+    private DeviceProfile(Context context, String apiKey) {
+        this.apiKey = apiKey;
+        model = DeviceCollector.getDeviceModel();
+        manufacturer = DeviceCollector.getManufacturer();
+        osVersion = DeviceCollector.getVersionRelease();
+        kernelVersion = DeviceCollector.GetLinuxKernelVersion();
+        appVersion = DeviceCollector.getAppVersion(context);
+        deviceId = DeviceCollector.getDeviceId(context, apiKey);
+        carrierName = DeviceCollector.getCarrierName(context);
+        country = DeviceCollector.getCountry(context);
+        locale = DeviceCollector.getLocale(context);
+        xdpi = DeviceCollector.getXDPI(context);
+        ydpi = DeviceCollector.getYDPI(context);
+        rooted = DeviceCollector.CheckRoot();
+    }
+
+    /**
+     * @return profile computed by an earlier {@link #get} call, null when there is none.
+     * Never computes, for the crash path.
+     */
+    public static DeviceProfile getCached() {
+        String apiKey = HoneyQAData.APIKEY == null ? "" : HoneyQAData.APIKEY;
+        DeviceProfile current = profile;
+        return current != null && current.apiKey.equals(apiKey) ? current : null;
+    }
+
+    /**
+     * @return profile of this device, computed on first call
+     */
+    public static DeviceProfile get(Context context) {
+        String apiKey = HoneyQAData.APIKEY == null ? "" : HoneyQAData.APIKEY;
+        DeviceProfile current = profile;
+        if (current != null && current.apiKey.equals(apiKey))
+            return current;
+        synchronized (DeviceProfile.class) {
+            current = profile;
+            if (current == null || !current.apiKey.equals(apiKey)) {
+                current = new DeviceProfile(context, apiKey);
+                profile = current;
+            }
+            return current;
+        }
+    }
+}
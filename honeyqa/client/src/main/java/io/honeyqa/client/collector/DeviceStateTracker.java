@@ -0,0 +1,146 @@
+package io.honeyqa.client.collector;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.net.ConnectivityManager;
+import android.os.Build;
+
+/**
+ * Keeps latest volatile device state (battery, network, gps, display) up to date from
+ * system broadcasts, so building a report reads memory instead of doing IPC on a
+ * dying thread. Until {@link #start(Context)} is called values are polled.
+ */
+public class DeviceStateTracker {
+
+    private static final String PROVIDERS_CHANGED_ACTION = "android.location.PROVIDERS_CHANGED";
+
+    private static boolean started = false;
+    private static volatile boolean tracking = false;
+
+    private static volatile int batteryLevel = -1;
+    private static volatile boolean wifiOn;
+    private static volatile boolean mobileOn;
+    private static volatile boolean connected = true;
+    private static volatile Runnable onConnected;
+    private static volatile boolean gpsOn;
+    private static volatile int orientation = -1;
+    private static volatile int screenWidth = -1;
+    private static volatile int screenHeight = -1;
+
+    /**
+     * Subscribe to battery, connectivity, location provider and configuration changes
+     */
+    public static synchronized void start(Context context) {
+        if (started)
+            return;
+        started = true;
+        final Context app = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+
+        Intent battery = app.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                batteryLevel = intent.getIntExtra("level", -1);
+            }
+        }, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null)
+            batteryLevel = battery.getIntExtra("level", -1);
+
+        app.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateNetwork(app);
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        app.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                gpsOn = DeviceCollector.getGps(app);
+            }
+        }, new IntentFilter(PROVIDERS_CHANGED_ACTION));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+            registerConfigurationCallback(app);
+
+        updateNetwork(app);
+        updateDisplay(app);
+        gpsOn = DeviceCollector.getGps(app);
+        tracking = true;
+    }
+
+    /**
+     * @param listener run on the main thread whenever connectivity comes back, null to clear
+     */
+    public static void setOnConnectedListener(Runnable listener) {
+        onConnected = listener;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void registerConfigurationCallback(final Context app) {
+        app.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                updateDisplay(app);
+            }
+
+            @Override
+            public void onLowMemory() {
+            }
+        });
+    }
+
+    private static void updateNetwork(Context context) {
+        wifiOn = DeviceCollector.getWiFiNetwork(context);
+        mobileOn = DeviceCollector.getMobileNetwork(context);
+        boolean wasConnected = connected;
+        connected = DeviceCollector.isConnected(context);
+        Runnable listener = onConnected;
+        if (connected && !wasConnected && listener != null)
+            listener.run();
+    }
+
+    private static void updateDisplay(Context context) {
+        orientation = DeviceCollector.getOrientation(context);
+        screenWidth = DeviceCollector.getWidthScreenSize(context);
+        screenHeight = DeviceCollector.getHeightScreenSize(context);
+    }
+
+    public static int getBatteryLevel(Context context) {
+        return tracking ? batteryLevel : DeviceCollector.getBatteryLevel(context);
+    }
+
+    public static boolean getWiFiNetwork(Context context) {
+        return tracking ? wifiOn : DeviceCollector.getWiFiNetwork(context);
+    }
+
+    public static boolean getMobileNetwork(Context context) {
+        return tracking ? mobileOn : DeviceCollector.getMobileNetwork(context);
+    }
+
+    /**
+     * @return true when a network is connected or connectivity is unknown
+     */
+    public static boolean isConnected(Context context) {
+        return tracking ? connected : DeviceCollector.isConnected(context);
+    }
+
+    public static boolean getGps(Context context) {
+        return tracking ? gpsOn : DeviceCollector.getGps(context);
+    }
+
+    public static int getOrientation(Context context) {
+        return tracking ? orientation : DeviceCollector.getOrientation(context);
+    }
+
+    public static int getWidthScreenSize(Context context) {
+        return tracking ? screenWidth : DeviceCollector.getWidthScreenSize(context);
+    }
+
+    public static int getHeightScreenSize(Context context) {
+        return tracking ? screenHeight : DeviceCollector.getHeightScreenSize(context);
+    }
+}
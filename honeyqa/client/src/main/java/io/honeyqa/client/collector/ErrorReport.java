@@ -1,12 +1,81 @@
 package io.honeyqa.client.collector;
 
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import io.honeyqa.client.json.JSONErrorData;
+import io.honeyqa.client.json.JSONInterface;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okio.Okio;
+import io.honeyqa.client.network.okio.Source;
+
+public class ErrorReport implements JSONInterface {
+    /**
+     * Report stages, see {@link #Stages}
+     */
+    public static final String STAGE_EXCEPTION = "exception";
+    public static final String STAGE_DEVICE = "device";
+    public static final String STAGE_LOG = "log";
 
-public class ErrorReport {
     public long mId;
     public String mHoneyQAVersion;
     public JSONErrorData ErrorData;
     public String LogData;
-    public String NativeData;
+    /**
+     * Native minidump file, streamed as dump_data by {@link #writeJSON}
+     */
+    public File NativeDump;
+    /**
+     * Stages collected into this report, a crash report may miss device data or log
+     * when they did not fit in {@link io.honeyqa.client.data.HoneyQAData#CrashTimeBudget}
+     */
+    public final List<String> Stages = new ArrayList<String>(3);
+
+    /**
+     * @return JSONObject includes console_log, exception, instance, version, stages.
+     * Native dump is not loaded in memory, use {@link #writeJSON} to send it.
+     */
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        try {
+            object.put("console_log", new JSONObject().put("data", LogData));
+            object.put("exception", ErrorData.toJSONObject());
+            object.put("instance", new JSONObject().put("id", mId));
+            object.put("version", mHoneyQAVersion);
+            object.put("stages", new JSONArray(Stages));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("console_log").beginObject().name("data").value(LogData).endObject();
+        writer.name("exception").value(ErrorData);
+        writer.name("instance").beginObject().name("id").value(mId).endObject();
+        writer.name("version").value(mHoneyQAVersion);
+        writer.name("stages").beginArray();
+        for (String stage : Stages)
+            writer.value(stage);
+        writer.endArray();
+        if (NativeDump != null) {
+            Source source = Okio.source(NativeDump);
+            try {
+                writer.name("dump_data").base64Value(source);
+            } finally {
+                source.close();
+            }
+        }
+        writer.endObject();
+    }
 }
@@ -1,12 +1,15 @@
 package io.honeyqa.client.collector;
 
 import android.content.Context;
+import android.os.SystemClock;
 
 import java.util.Calendar;
 import java.util.TimeZone;
 
 import io.honeyqa.client.data.CallStackData;
 import io.honeyqa.client.json.JSONErrorData;
+import io.honeyqa.client.json.JSONOccurrence;
+import io.honeyqa.client.json.JSONStackTrace;
 import io.honeyqa.client.data.HoneyQAData;
 import io.honeyqa.client.eventpath.EventPathManager;
 import io.honeyqa.client.rank.ErrorRank;
@@ -14,23 +17,109 @@ import io.honeyqa.client.rank.ErrorRank;
 public class ErrorReportFactory {
 
     public static ErrorReport createErrorReport(Throwable e, String tag, ErrorRank rank, Context context) {
+        ErrorReport report = createExceptionReport(e, tag, rank, context);
+        completeErrorReport(report, context);
+        return report;
+    }
+
+    /**
+     * Add device data and log stages to a report from {@link #createExceptionReport}
+     */
+    public static void completeErrorReport(ErrorReport report, Context context) {
+        EventPathManager.flushSpill();
+        putDeviceState(report.ErrorData, context, DeviceProfile.get(context));
+        report.Stages.add(ErrorReport.STAGE_DEVICE);
+        report.LogData = LogCollector.getLog(context);
+        report.Stages.add(ErrorReport.STAGE_LOG);
+    }
+
+    /**
+     * Compact record of report, sent when same fingerprint was already reported
+     *
+     * @param count   occurrences in current window
+     * @param profile device profile, app version and device id are left out when null
+     */
+    public static JSONOccurrence createOccurrence(ErrorReport report, int count,
+                                                  DeviceProfile profile) {
+        JSONOccurrence occurrence = new JSONOccurrence();
+        occurrence.apikey = report.ErrorData.apikey;
+        occurrence.fingerprint = report.ErrorData.fingerprint;
+        occurrence.errorname = report.ErrorData.errorname;
+        occurrence.rank = report.ErrorData.rank;
+        occurrence.datetime = report.ErrorData.datetime;
+        if (profile != null) {
+            occurrence.appversion = profile.appVersion;
+            occurrence.mDeviceId = profile.deviceId;
+        }
+        occurrence.count = count;
+        return occurrence;
+    }
+
+    public static ErrorReport createNativeErrorReport(Context context) {
         ErrorReport report = new ErrorReport();
-        report.ErrorData = createErrorData(e, tag, rank, context);
+        report.ErrorData = createNativeErrorData(context);
         report.LogData = LogCollector.getLog(context);
         report.mId = getId();
         report.mHoneyQAVersion = getHoneyQAVersion();
+        report.Stages.add(ErrorReport.STAGE_EXCEPTION);
+        report.Stages.add(ErrorReport.STAGE_DEVICE);
+        report.Stages.add(ErrorReport.STAGE_LOG);
         return report;
     }
 
-    public static ErrorReport createNativeErrorReport(Context context) {
+    /**
+     * First crash stage, only exception, breadcrumbs and in-memory app fields.
+     * No IPC and no disk reads, so it can be persisted right away.
+     */
+    public static ErrorReport createExceptionReport(Throwable e, String tag, ErrorRank rank, Context context) {
+        return createExceptionReport(e, tag, rank, context, null);
+    }
+
+    /**
+     * @param fingerprint from {@link io.honeyqa.client.exception.ExceptionRateLimiter},
+     *                    computed when null
+     */
+    public static ErrorReport createExceptionReport(Throwable e, String tag, ErrorRank rank,
+                                                    Context context, String fingerprint) {
         ErrorReport report = new ErrorReport();
-        report.ErrorData = createNativeErrorData(context);
-        report.LogData = LogCollector.getLog(context);
+        report.ErrorData = createErrorData(e, tag, rank, context, fingerprint);
         report.mId = getId();
         report.mHoneyQAVersion = getHoneyQAVersion();
+        report.Stages.add(ErrorReport.STAGE_EXCEPTION);
         return report;
     }
 
+    /**
+     * Add device data to report when deadline is not reached yet. Static device fields
+     * come from the cached {@link DeviceProfile} only, they are left out when it was
+     * not computed yet.
+     *
+     * @param deadline {@link SystemClock#uptimeMillis()} based
+     * @return true when stage completed
+     */
+    public static boolean addDeviceData(ErrorReport report, Context context, long deadline) {
+        if (SystemClock.uptimeMillis() >= deadline)
+            return false;
+        putDeviceState(report.ErrorData, context, DeviceProfile.getCached());
+        report.Stages.add(ErrorReport.STAGE_DEVICE);
+        return true;
+    }
+
+    /**
+     * Add log to report when deadline is not reached yet, logcat is killed at deadline
+     *
+     * @param deadline {@link SystemClock#uptimeMillis()} based
+     * @return true when stage completed
+     */
+    public static boolean addLog(ErrorReport report, Context context, long deadline) {
+        long remaining = deadline - SystemClock.uptimeMillis();
+        if (remaining <= 0)
+            return false;
+        report.LogData = LogCollector.getLog(context, remaining);
+        report.Stages.add(ErrorReport.STAGE_LOG);
+        return true;
+    }
+
     private static long getId() {
         Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
         return calendar.getTimeInMillis();
@@ -42,73 +131,75 @@ public class ErrorReportFactory {
 
     private static JSONErrorData createNativeErrorData(Context context) {
         JSONErrorData senddata = new JSONErrorData();
-        senddata.apikey = HoneyQAData.APIKEY;
-        senddata.datetime = DateCollector.GetDateYYMMDDHHMMSS(context);
-        senddata.device = DeviceCollector.getDeviceModel();
-        senddata.country = DeviceCollector.getCountry(context);
-        senddata.appversion = DeviceCollector.getAppVersion(context);
-        senddata.osversion = DeviceCollector.getVersionRelease();
-        senddata.gpson = (DeviceCollector.getGps(context)) ? 1 : 0;
-        senddata.wifion = (DeviceCollector.getWiFiNetwork(context)) ? 1 : 0;
-        senddata.mobileon = (DeviceCollector.getMobileNetwork(context)) ? 1 : 0;
-        senddata.scrwidth = DeviceCollector.getWidthScreenSize(context);
-        senddata.scrheight = DeviceCollector.getHeightScreenSize(context);
-        senddata.batterylevel = DeviceCollector.getBatteryLevel(context);
-        senddata.availsdcard = DeviceCollector.BytetoMegaByte(DeviceCollector.getAvailableExternalMemorySize());
-        senddata.rooted = (DeviceCollector.CheckRoot()) ? 1 : 0;
-        senddata.appmemtotal = DeviceCollector.BytetoMegaByte(DeviceCollector.getTotalMemory());
-        senddata.appmemfree = DeviceCollector.BytetoMegaByte(DeviceCollector.getFreeMemory());
-        senddata.appmemmax = DeviceCollector.BytetoMegaByte(DeviceCollector.getMaxMemory());
-        senddata.kernelversion = DeviceCollector.GetLinuxKernelVersion();
-        senddata.xdpi = DeviceCollector.getXDPI(context);
-        senddata.ydpi = DeviceCollector.getYDPI(context);
-        senddata.scrorientation = DeviceCollector.getOrientation(context);
-        senddata.sysmemlow = (DeviceCollector.getSystemLowMemory()) ? 1 : 0;
-        senddata.eventpaths = EventPathManager.GetErrorEventPath();
-        senddata.locale = DeviceCollector.getLocale(context);
-        senddata.mCarrierName = DeviceCollector.getCarrierName(context);
-        senddata.mDeviceId = DeviceCollector.getDeviceId(context, HoneyQAData.APIKEY);
+        putAppData(senddata, context);
+        putDeviceState(senddata, context, DeviceProfile.getCached());
         senddata.rank = ErrorRank.Native.value();
         return senddata;
     }
 
-    private static JSONErrorData createErrorData(Throwable e, String tag, ErrorRank rank, Context context) {
+    private static JSONErrorData createErrorData(Throwable e, String tag, ErrorRank rank,
+                                                 Context context, String fingerprint) {
         JSONErrorData senddata = new JSONErrorData();
-        String CallStack = CallStackCollector.GetCallStack(e);
-        CallStackData data = CallStackCollector.ParseStackTrace(e, CallStack);
-        senddata.apikey = HoneyQAData.APIKEY;
-        senddata.datetime = DateCollector.GetDateYYMMDDHHMMSS(context);
-        senddata.device = DeviceCollector.getDeviceModel();
-        senddata.country = DeviceCollector.getCountry(context);
+        JSONStackTrace stackTrace = CallStackCollector.GetStackTrace(e);
+        CallStackData data = CallStackCollector.ParseStackTrace(e, stackTrace);
+        putAppData(senddata, context);
         senddata.errorname = data.ErrorName;
         senddata.errorclassname = data.ClassName;
         senddata.linenum = data.Line;
         senddata.lastactivity = data.ActivityName;
-        senddata.callstack = CallStack;
-        senddata.appversion = DeviceCollector.getAppVersion(context);
-        senddata.osversion = DeviceCollector.getVersionRelease();
-        senddata.gpson = (DeviceCollector.getGps(context)) ? 1 : 0;
-        senddata.wifion = (DeviceCollector.getWiFiNetwork(context)) ? 1 : 0;
-        senddata.mobileon = (DeviceCollector.getMobileNetwork(context)) ? 1 : 0;
-        senddata.scrwidth = DeviceCollector.getWidthScreenSize(context);
-        senddata.scrheight = DeviceCollector.getHeightScreenSize(context);
-        senddata.batterylevel = DeviceCollector.getBatteryLevel(context);
+        // one form only, the text form is about twice the size of the structure
+        if (HoneyQAData.TextCallstack)
+            senddata.callstack = stackTrace.toString();
+        else
+            senddata.stacktrace = stackTrace;
+        senddata.fingerprint = fingerprint != null ? fingerprint
+                : CrashFingerprint.compute(e, HoneyQAData.FingerprintFrames);
+        senddata.tag = tag;
+        senddata.rank = rank.value();
+        return senddata;
+    }
+
+    /**
+     * Fill fields which are already in memory: api key, time and breadcrumbs
+     */
+    private static void putAppData(JSONErrorData senddata, Context context) {
+        senddata.apikey = HoneyQAData.APIKEY;
+        senddata.datetime = DateCollector.GetDateYYMMDDHHMMSS(context);
+        senddata.eventpaths = EventPathManager.GetErrorEventPath();
+    }
+
+    /**
+     * Fill device fields, static ones come from {@link DeviceProfile},
+     * volatile ones from {@link DeviceStateTracker}
+     *
+     * @param profile static fields are left out when null
+     */
+    private static void putDeviceState(JSONErrorData senddata, Context context,
+                                       DeviceProfile profile) {
+        if (profile != null) {
+            senddata.device = profile.model;
+            senddata.country = profile.country;
+            senddata.appversion = profile.appVersion;
+            senddata.osversion = profile.osVersion;
+            senddata.rooted = profile.rooted ? 1 : 0;
+            senddata.kernelversion = profile.kernelVersion;
+            senddata.xdpi = profile.xdpi;
+            senddata.ydpi = profile.ydpi;
+            senddata.locale = profile.locale;
+            senddata.mCarrierName = profile.carrierName;
+            senddata.mDeviceId = profile.deviceId;
+        }
+        senddata.gpson = (DeviceStateTracker.getGps(context)) ? 1 : 0;
+        senddata.wifion = (DeviceStateTracker.getWiFiNetwork(context)) ? 1 : 0;
+        senddata.mobileon = (DeviceStateTracker.getMobileNetwork(context)) ? 1 : 0;
+        senddata.scrwidth = DeviceStateTracker.getWidthScreenSize(context);
+        senddata.scrheight = DeviceStateTracker.getHeightScreenSize(context);
+        senddata.batterylevel = DeviceStateTracker.getBatteryLevel(context);
         senddata.availsdcard = DeviceCollector.BytetoMegaByte(DeviceCollector.getAvailableExternalMemorySize());
-        senddata.rooted = (DeviceCollector.CheckRoot()) ? 1 : 0;
         senddata.appmemtotal = DeviceCollector.BytetoMegaByte(DeviceCollector.getTotalMemory());
         senddata.appmemfree = DeviceCollector.BytetoMegaByte(DeviceCollector.getFreeMemory());
         senddata.appmemmax = DeviceCollector.BytetoMegaByte(DeviceCollector.getMaxMemory());
-        senddata.kernelversion = DeviceCollector.GetLinuxKernelVersion();
-        senddata.xdpi = DeviceCollector.getXDPI(context);
-        senddata.ydpi = DeviceCollector.getYDPI(context);
-        senddata.scrorientation = DeviceCollector.getOrientation(context);
+        senddata.scrorientation = DeviceStateTracker.getOrientation(context);
         senddata.sysmemlow = (DeviceCollector.getSystemLowMemory()) ? 1 : 0;
-        senddata.tag = tag;
-        senddata.rank = rank.value();
-        senddata.eventpaths = EventPathManager.GetErrorEventPath();
-        senddata.locale = DeviceCollector.getLocale(context);
-        senddata.mCarrierName = DeviceCollector.getCarrierName(context);
-        senddata.mDeviceId = DeviceCollector.getDeviceId(context, HoneyQAData.APIKEY);
-        return senddata;
     }
-}
\ No newline at end of file
+}
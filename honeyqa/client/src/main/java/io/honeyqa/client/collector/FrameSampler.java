@@ -0,0 +1,276 @@
+package io.honeyqa.client.collector;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.json.JSONFrameProfile;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.BufferedSource;
+import io.honeyqa.client.network.okio.Okio;
+
+/**
+ * Main thread frame sampler (API 16+).
+ * <p/>
+ * This class is loaded on every API level. Choreographer is only referenced by the nested
+ * {@link FrameCallback}, which is loaded after the API level check.
+ * <p/>
+ * A Choreographer callback counts every frame duration into a fixed bucket histogram.
+ * A background thread wakes every {@link HoneyQAData#FrameBudget} ms; when no frame
+ * completed during that time the main thread is busy, and the first app frame on top of
+ * its stack is counted as a hot frame. The aggregated profile is saved every minute and
+ * uploaded with the next session, see {@link #takeProfile(Context)}.
+ */
+public class FrameSampler implements Runnable {
+
+    private static final long[] BUCKET_BOUNDS = {16, 33, 50, 100, 250, 700};
+    private static final long SAVE_INTERVAL = 60 * 1000;
+    private static final String PROFILE_FILE = "honeyqa-profile.json";
+    private static final String LAST_PROFILE_FILE = "honeyqa-profile-last.json";
+    private static final String IDLE_FRAME = "android.os.MessageQueue.nativePollOnce";
+
+    private static FrameSampler sampler;
+
+    private final File file;
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    // written by main thread only
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private volatile long lastFrameNanos = 0;
+    private volatile long frameCount = 0;
+
+    // guarded by this
+    private final Map<String, Integer> hotFrames = new HashMap<String, Integer>();
+    private long samples = 0;
+    private long otherSamples = 0;
+    private long since = SystemClock.uptimeMillis();
+
+    private FrameSampler(Context context) {
+        file = new File(context.getCacheDir(), PROFILE_FILE);
+        thread = new Thread(this, "HoneyQA-Frames");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start sampling when {@link HoneyQAData#FrameSampling} is set, profile saved by previous
+     * process is kept for next session
+     */
+    public static synchronized void start(Context context) {
+        if (sampler != null || !HoneyQAData.FrameSampling
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return;
+        final FrameSampler current = new FrameSampler(context);
+        File last = new File(context.getCacheDir(), LAST_PROFILE_FILE);
+        if (current.file.exists() && !last.exists())
+            current.file.renameTo(last);
+        sampler = current;
+        FrameCallback.post(current);
+        current.thread.start();
+    }
+
+    public static synchronized void stop() {
+        if (sampler != null) {
+            sampler.stopped = true;
+            sampler.thread.interrupt();
+            sampler = null;
+        }
+    }
+
+    /**
+     * Profile to upload with a session: the one saved by previous process, otherwise the
+     * one collected so far by this process, which is then reset.
+     *
+     * @return null when there is nothing to upload
+     */
+    public static JSONObject takeProfile(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return null;
+        FrameSampler current;
+        synchronized (FrameSampler.class) {
+            current = sampler;
+        }
+        File last = new File(context.getCacheDir(), LAST_PROFILE_FILE);
+        if (!last.exists() && current == null)
+            last = new File(context.getCacheDir(), PROFILE_FILE); // saved by previous process
+        if (last.exists()) {
+            JSONObject profile = read(last);
+            last.delete();
+            return profile;
+        }
+        if (current == null)
+            return null;
+        JSONFrameProfile profile = current.snapshot(true);
+        current.file.delete();
+        long frames = 0;
+        for (long count : profile.frames)
+            frames += count;
+        return frames > 0 ? profile.toJSONObject() : null;
+    }
+
+    /**
+     * @return false when sampler is stopped and frames should not be counted any more
+     */
+    private boolean onFrame(long frameTimeNanos) {
+        if (stopped)
+            return false;
+        if (lastFrameNanos != 0) {
+            long millis = (frameTimeNanos - lastFrameNanos) / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket])
+                bucket++;
+            histogram.incrementAndGet(bucket);
+        }
+        lastFrameNanos = frameTimeNanos;
+        frameCount++;
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameCallback implements Choreographer.FrameCallback {
+        private final FrameSampler sampler;
+
+        private FrameCallback(FrameSampler sampler) {
+            this.sampler = sampler;
+        }
+
+        static void post(FrameSampler sampler) {
+            final FrameCallback callback = new FrameCallback(sampler);
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    Choreographer.getInstance().postFrameCallback(callback);
+                }
+            });
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (sampler.onFrame(frameTimeNanos))
+                Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        long seenFrames = -1;
+        long savedFrames = 0;
+        long savedAt = SystemClock.uptimeMillis();
+        Thread mainThread = Looper.getMainLooper().getThread();
+        while (!stopped) {
+            long budget = Math.max(HoneyQAData.FrameBudget, BUCKET_BOUNDS[0]);
+            try {
+                Thread.sleep(budget);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long frames = frameCount;
+            if (frames == seenFrames && lastFrameNanos != 0
+                    && System.nanoTime() - lastFrameNanos > budget * 1000000)
+                sample(mainThread.getStackTrace());
+            seenFrames = frames;
+
+            if (SystemClock.uptimeMillis() - savedAt >= SAVE_INTERVAL && frames != savedFrames) {
+                save(snapshot(false));
+                savedFrames = frames;
+                savedAt = SystemClock.uptimeMillis();
+            }
+        }
+    }
+
+    private void sample(StackTraceElement[] stack) {
+        if (stack.length == 0)
+            return;
+        String leaf = stack[0].getClassName() + "." + stack[0].getMethodName();
+        if (leaf.equals(IDLE_FRAME))
+            return; // no vsync, e.g. app in background
+        StackTraceElement hot = stack[0];
+        for (StackTraceElement element : stack) {
+            if (!CrashFingerprint.isFramework(element.getClassName())) {
+                hot = element;
+                break;
+            }
+        }
+        String key = hot.toString();
+        synchronized (this) {
+            samples++;
+            Integer count = hotFrames.get(key);
+            if (count != null)
+                hotFrames.put(key, count + 1);
+            else if (hotFrames.size() < HoneyQAData.MaxHotFrames)
+                hotFrames.put(key, 1);
+            else
+                otherSamples++;
+        }
+    }
+
+    private synchronized JSONFrameProfile snapshot(boolean reset) {
+        JSONFrameProfile profile = new JSONFrameProfile();
+        profile.bucketBounds = BUCKET_BOUNDS;
+        profile.frames = new long[histogram.length()];
+        for (int i = 0; i < profile.frames.length; i++)
+            profile.frames[i] = reset ? histogram.getAndSet(i, 0) : histogram.get(i);
+        profile.budget = HoneyQAData.FrameBudget;
+        profile.duration = SystemClock.uptimeMillis() - since;
+        profile.samples = samples;
+        profile.hotFrames = new LinkedHashMap<String, Integer>(hotFrames);
+        profile.otherSamples = otherSamples;
+        if (reset) {
+            hotFrames.clear();
+            samples = 0;
+            otherSamples = 0;
+            since = SystemClock.uptimeMillis();
+        }
+        return profile;
+    }
+
+    private void save(JSONFrameProfile profile) {
+        File temp = new File(file.getPath() + ".tmp");
+        BufferedSink sink = null;
+        try {
+            sink = Okio.buffer(Okio.sink(temp));
+            profile.writeJSON(new JSONStreamWriter(sink));
+            sink.close();
+            sink = null;
+            temp.renameTo(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        } finally {
+            HQ_Util.closeQuietly(sink);
+        }
+    }
+
+    private static JSONObject read(File file) {
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(file));
+            return new JSONObject(source.readUtf8());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            HQ_Util.closeQuietly(source);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.honeyqa.client.collector;
+
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring of recent log records written through HoneyQAClient.v/d/i/w/e.
+ * <p/>
+ * Writers claim a slot with one atomic increment and publish the record with one
+ * atomic store, so logging never blocks. When the ring is full the oldest record is
+ * overwritten. Reports read the ring instead of spawning logcat.
+ */
+public class LogBuffer {
+
+    public static final int CAPACITY = 128;
+
+    private static final AtomicLong cursor = new AtomicLong();
+    private static final AtomicReferenceArray<Record> records = new AtomicReferenceArray<Record>(CAPACITY);
+
+    private static final char[] LEVELS = {'V', 'D', 'I', 'W', 'E'};
+
+    private static class Record {
+        final long sequence;
+        final long timestamp;
+        final int level;
+        final String tag;
+        final String message;
+        final Throwable throwable;
+
+        Record(long sequence, long timestamp, int level, String tag, String message,
+               Throwable throwable) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
+    /**
+     * Append log record
+     *
+     * @param level     0 verbose ~ 4 error
+     * @param throwable may be null, formatted only when log is read
+     */
+    public static void add(int level, String tag, String message, Throwable throwable) {
+        long sequence = cursor.getAndIncrement();
+        records.set((int) (sequence % CAPACITY),
+                new Record(sequence, System.currentTimeMillis(), level, tag, message, throwable));
+    }
+
+    /**
+     * @return true when no record was written yet
+     */
+    public static boolean isEmpty() {
+        return cursor.get() == 0;
+    }
+
+    /**
+     * Format last records like logcat -v time
+     *
+     * @param lines maximum number of records
+     * @return records separated by \n, oldest first
+     */
+    public static String getLog(int lines) {
+        long end = cursor.get();
+        long start = Math.max(end - Math.min(lines, CAPACITY), 0);
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder output = new StringBuilder();
+        for (long sequence = start; sequence < end; sequence++) {
+            Record record = records.get((int) (sequence % CAPACITY));
+            // slot not published yet or already overwritten by a newer record
+            if (record == null || record.sequence != sequence)
+                continue;
+            output.append(format.format(new Date(record.timestamp)))
+                    .append(' ').append(LEVELS[record.level])
+                    .append('/').append(record.tag)
+                    .append(": ").append(record.message)
+                    .append("\n");
+            if (record.throwable != null)
+                output.append(Log.getStackTraceString(record.throwable));
+        }
+        return output.toString();
+    }
+}
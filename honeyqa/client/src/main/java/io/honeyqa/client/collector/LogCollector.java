@@ -4,50 +4,120 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 
 import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
 
 public class LogCollector {
 
+    /**
+     * Kills logcat when it runs past {@link HoneyQAData#LogTimeBudget}
+     */
+    private static final ScheduledExecutorService watchdog =
+            new ScheduledThreadPoolExecutor(1, HQ_Util.threadFactory("HoneyQA-Logcat", true));
+
+    /**
+     * Last {@link HoneyQAData#LogLine} lines of logcat, filtered by
+     * {@link HoneyQAData#LogFilter}. When {@link HoneyQAData#ReadLogcat} is off or logcat
+     * yields nothing, the lines logged through HoneyQAClient are read from
+     * {@link LogBuffer} instead, without spawning a process.
+     *
+     * @return log lines separated by \n
+     */
     public final static String getLog(Context context) {
-        StringBuilder LOGCAT_CMD = new StringBuilder();
-        LOGCAT_CMD.append("logcat").append(" -d").append(" -v").append(" time").append(" tags").append(" *:V");
-        //.append(StateData.LogFilter);
+        return getLog(context, HoneyQAData.LogTimeBudget);
+    }
+
+    /**
+     * Same as {@link #getLog(Context)}, logcat is given at most timeBudget ms
+     */
+    public final static String getLog(Context context, long timeBudget) {
+        if (!HoneyQAData.TransferLog || HoneyQAData.LogLine <= 0)
+            return "";
+        if (HoneyQAData.ReadLogcat) {
+            String log = getLogcat(Math.min(timeBudget, HoneyQAData.LogTimeBudget));
+            if (log.length() > 0 || LogBuffer.isEmpty())
+                return log;
+        }
+        return LogBuffer.getLog(HoneyQAData.LogLine);
+    }
 
-        Process logcatProc = null;
+    /**
+     * Read last {@link HoneyQAData#LogLine} lines of logcat.
+     * Only those lines are kept while reading, and logcat is killed when it takes
+     * longer than timeBudget ms; lines read so far are returned.
+     *
+     * @return log lines separated by \n
+     */
+    private static String getLogcat(long timeBudget) {
+        int capacity = HoneyQAData.LogLine;
 
+        final Process logcatProc;
         try {
-            logcatProc = Runtime.getRuntime().exec(LOGCAT_CMD.toString());
+            logcatProc = Runtime.getRuntime().exec(getCommand(capacity));
         } catch (IOException e) {
             e.printStackTrace();
             return "";
         }
+        ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                logcatProc.destroy();
+            }
+        }, timeBudget, TimeUnit.MILLISECONDS);
+
+        String[] ring = new String[capacity];
+        int count = 0;
         BufferedReader reader = null;
-        StringBuilder strOutput = new StringBuilder();
-        ArrayList<String> LogList = new ArrayList<String>();
         try {
             reader = new BufferedReader(new InputStreamReader(logcatProc.getInputStream()));
             String line;
             while ((line = reader.readLine()) != null) {
-                LogList.add(line);
+                ring[count % capacity] = line;
+                count++;
             }
-            reader.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            // logcat killed by watchdog, keep lines read so far
+        } finally {
+            timeout.cancel(false);
+            logcatProc.destroy();
+            HQ_Util.closeQuietly(reader);
         }
 
-        int LogLineStart = LogList.size() - HoneyQAData.LogLine;
-        if (LogLineStart < 0)
-            LogLineStart = 0;
-
-        int LogLineEnd = LogList.size();
-
-        for (int i = LogLineStart; i < LogLineEnd; i++) {
-            strOutput.append(LogList.get(i)).append("\n");
+        StringBuilder strOutput = new StringBuilder();
+        int LogLineStart = Math.max(count - capacity, 0);
+        for (int i = LogLineStart; i < count; i++) {
+            strOutput.append(ring[i % capacity]).append("\n");
         }
         return strOutput.toString();
     }
 
+    /**
+     * @return logcat command dumping last lines only, filtered by {@link HoneyQAData#LogFilter}
+     */
+    private static String[] getCommand(int lines) {
+        List<String> command = new ArrayList<String>();
+        command.add("logcat");
+        command.add("-d");
+        command.add("-v");
+        command.add("time");
+        command.add("-t");
+        command.add(String.valueOf(lines));
+        String filter = HoneyQAData.LogFilter;
+        if (filter == null || filter.trim().length() == 0) {
+            command.add("*:V");
+        } else {
+            for (String spec : filter.trim().split("\\s+"))
+                command.add(spec);
+        }
+        return command.toArray(new String[command.size()]);
+    }
+
 }
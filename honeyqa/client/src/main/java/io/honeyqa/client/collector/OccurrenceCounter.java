@@ -0,0 +1,138 @@
+package io.honeyqa.client.collector;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.util.Map;
+
+import io.honeyqa.client.data.HoneyQAData;
+
+/**
+ * Persistent table of crash fingerprints, counting occurrences in the current
+ * {@link HoneyQAData#DedupWindow}. Kept in SharedPreferences as
+ * fingerprint -> "window start millis:count[:occurrence record path]", at most
+ * {@link HoneyQAData#MaxFingerprints} entries.
+ */
+public class OccurrenceCounter {
+
+    private static final String PREFERENCES = "honeyqa_occurrences";
+
+    /**
+     * Count one occurrence of fingerprint
+     *
+     * @param sync write to disk before returning, for the crash path
+     * @return occurrences in current window including this one, 1 when a new window starts
+     * or deduplication is disabled
+     */
+    public static synchronized int record(Context context, String fingerprint, boolean sync) {
+        if (context == null || fingerprint == null || HoneyQAData.DedupWindow <= 0)
+            return 1;
+        SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long windowStart = -1;
+        int count = 0;
+        String record = null;
+        String value = prefs.getString(fingerprint, null);
+        if (value != null) {
+            int separator = value.indexOf(':');
+            int pathSeparator = value.indexOf(':', separator + 1);
+            try {
+                windowStart = Long.parseLong(value.substring(0, separator));
+                count = Integer.parseInt(pathSeparator < 0 ? value.substring(separator + 1)
+                        : value.substring(separator + 1, pathSeparator));
+                record = pathSeparator < 0 ? null : value.substring(pathSeparator + 1);
+            } catch (RuntimeException e) {
+                windowStart = -1;
+            }
+        }
+
+        SharedPreferences.Editor editor = prefs.edit();
+        if (windowStart < 0 || now < windowStart || now - windowStart >= HoneyQAData.DedupWindow) {
+            evict(prefs, editor, fingerprint, now);
+            windowStart = now;
+            count = 1;
+            record = null;
+        } else {
+            count++;
+        }
+        editor.putString(fingerprint, windowStart + ":" + count
+                + (record != null ? ":" + record : ""));
+        save(editor, sync);
+        return count;
+    }
+
+    /**
+     * @return occurrence record of the current window of fingerprint, null when none
+     */
+    public static synchronized File getRecord(Context context, String fingerprint) {
+        if (context == null || fingerprint == null)
+            return null;
+        String value = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+                .getString(fingerprint, null);
+        int separator = value != null ? value.indexOf(':') : -1;
+        int pathSeparator = separator >= 0 ? value.indexOf(':', separator + 1) : -1;
+        return pathSeparator < 0 ? null : new File(value.substring(pathSeparator + 1));
+    }
+
+    /**
+     * Remember record which further occurrences of the current window are added to
+     */
+    public static synchronized void setRecord(Context context, String fingerprint, File record,
+                                              boolean sync) {
+        if (context == null || fingerprint == null)
+            return;
+        SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        String value = prefs.getString(fingerprint, null);
+        if (value == null)
+            return;
+        int separator = value.indexOf(':');
+        int pathSeparator = value.indexOf(':', separator + 1);
+        String window = pathSeparator < 0 ? value : value.substring(0, pathSeparator);
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString(fingerprint, window + ":" + record.getPath());
+        save(editor, sync);
+    }
+
+    private static void save(SharedPreferences.Editor editor, boolean sync) {
+        if (sync)
+            editor.commit();
+        else
+            editor.apply();
+    }
+
+    /**
+     * Remove expired windows, and the oldest window when table is still full
+     */
+    private static void evict(SharedPreferences prefs, SharedPreferences.Editor editor,
+                              String adding, long now) {
+        Map<String, ?> entries = prefs.getAll();
+        int remaining = entries.size();
+        String oldest = null;
+        long oldestStart = Long.MAX_VALUE;
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            if (entry.getKey().equals(adding)) {
+                remaining--;
+                continue;
+            }
+            long start = entry.getValue() instanceof String ? parseStart((String) entry.getValue()) : 0;
+            if (now < start || now - start >= HoneyQAData.DedupWindow) {
+                editor.remove(entry.getKey());
+                remaining--;
+            } else if (start < oldestStart) {
+                oldestStart = start;
+                oldest = entry.getKey();
+            }
+        }
+        if (remaining >= HoneyQAData.MaxFingerprints && oldest != null)
+            editor.remove(oldest);
+    }
+
+    private static long parseStart(String value) {
+        try {
+            return Long.parseLong(value.substring(0, value.indexOf(':')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -3,15 +3,53 @@ package io.honeyqa.client.data;
 import android.content.Context;
 
 public class HoneyQAData {
+    public static long ANRThreshold = 5000;
     public static String APIKEY = "";
     public static Context APP_CONTEXT = null;
     public static boolean FIRST_CONNECT = true;
     public static final String HONEYQA_SDK_LOG = "honeyqa";
+    public static int CompressThreshold = 1024;
+    public static long CrashTimeBudget = 500;
+    public static long DedupWindow = 60 * 60 * 1000;
+    public static boolean EventCallSite = true;
+    public static int ExceptionBurst = 10;
+    public static double ExceptionsPerMinute = 10;
+    public static int FingerprintBurst = 3;
+    public static int FingerprintFrames = 5;
+    public static long FrameBudget = 50;
+    public static boolean FrameSampling = false;
+    public static double FingerprintsPerMinute = 1;
+    public static boolean isCompress;
     public static boolean isEncrypt;
     public static String LogFilter = "";
     public static int LogLine = 20;
+    public static long LogTimeBudget = 300;
+    public static int MaxEventHistory = 200;
+    public static int MaxFingerprints = 64;
+    public static int MaxHotFrames = 50;
+    public static int MaxPendingUploads = 32;
+    public static int MaxStackDepth = 64;
+    public static int MaxStoredReports = 100;
+    /**
+     * Attach logcat lines to reports, lines logged through HoneyQAClient are attached
+     * only when this is off or logcat yields nothing
+     */
+    public static boolean ReadLogcat = true;
+    public static int ReportBatchSize = 10;
+    /**
+     * Fraction of handled exceptions reported, indexed by ErrorRank ordinal
+     */
+    public static float[] SampleRates = {1f, 1f, 1f, 1f, 1f, 1f};
     public static String SDKVersion = "0.1";
     public static String SessionID = "";
+    public static long SessionUploadInterval = 60 * 60 * 1000;
+    public static boolean SpillEventHistory = false;
+    /**
+     * Send printStackTrace text as "callstack", the field the server reads. When off,
+     * the about half as large structured "stacktrace" is sent instead.
+     */
+    public static boolean TextCallstack = true;
+    public static boolean TimestampMillis = false;
     public static boolean ToggleLogCat = true;
     public static boolean TransferLog = true;
 }
@@ -0,0 +1,143 @@
+package io.honeyqa.client.eventpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity, lock-free history of event paths. When full, adding an event path
+ * evicts the oldest one.
+ * <p/>
+ * Each slot holds an immutable entry published through an {@link AtomicReferenceArray},
+ * so a reader sees a whole entry or none. {@link EventPath} objects, which format their
+ * date, are created only when the history is read.
+ */
+class EventHistory {
+
+    private final int capacity;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicReferenceArray<Entry> entries;
+    // sequence + 1 of the event path in each slot, 0 while slot is being written
+    private final AtomicLongArray sequences;
+    // sequence of the first event path after the last clear
+    private volatile long cleared;
+
+    EventHistory(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        entries = new AtomicReferenceArray<Entry>(this.capacity);
+        sequences = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * @param site    interned call site id, -1 when not captured
+     * @param evicted read the evicted event path, otherwise it is dropped
+     * @return evicted event path, null when history was not full or evicted is not set
+     */
+    EventPath add(long timestamp, int site, String label, boolean evicted) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+        EventPath old = null;
+        if (evicted && sequence >= capacity)
+            old = read(slot, sequence - capacity + 1);
+        Entry entry = new Entry(timestamp, site, label);
+        // readers which saw the new entry also see the 0, published sequence comes last
+        sequences.set(slot, 0);
+        entries.set(slot, entry);
+        sequences.set(slot, sequence + 1);
+        return old;
+    }
+
+    /**
+     * Hide event paths recorded so far from {@link #last(int)}, they are still
+     * returned by {@link #recent(int)}
+     */
+    void clear() {
+        cleared = cursor.get();
+    }
+
+    /**
+     * @return last number event paths since the last clear, oldest first.
+     * Cost is O(number).
+     */
+    List<EventPath> last(int number) {
+        return range(number, cleared);
+    }
+
+    /**
+     * @return last number event paths including cleared ones, oldest first
+     */
+    List<EventPath> recent(int number) {
+        return range(number, 0);
+    }
+
+    private List<EventPath> range(int number, long from) {
+        long end = cursor.get();
+        long start = Math.max(Math.max(end - Math.min(number, capacity), 0), from);
+        List<EventPath> result = new ArrayList<EventPath>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            EventPath eventpath = read((int) (sequence % capacity), sequence + 1);
+            if (eventpath != null)
+                result.add(eventpath);
+        }
+        return result;
+    }
+
+    /**
+     * @return copy with the given capacity keeping the latest event paths
+     */
+    EventHistory resize(int capacity) {
+        EventHistory resized = new EventHistory(capacity);
+        long end = cursor.get();
+        long start = Math.max(end - Math.min(resized.capacity, this.capacity), 0);
+        resized.cleared = Math.max(cleared - start, 0);
+        for (long sequence = start; sequence < end; sequence++) {
+            Entry entry = entry((int) (sequence % this.capacity), sequence + 1);
+            if (entry != null)
+                resized.add(entry.timestamp, entry.site, entry.label, false);
+        }
+        return resized;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @param published expected sequence + 1 of the slot
+     * @return event path of slot, null while it is being written or overwritten
+     */
+    private EventPath read(int slot, long published) {
+        Entry entry = entry(slot, published);
+        if (entry == null)
+            return null;
+        return new EventPath(entry.timestamp, EventPathManager.getCallSite(entry.site),
+                entry.label);
+    }
+
+    /**
+     * @return entry of slot, null while it is being written or overwritten
+     */
+    private Entry entry(int slot, long published) {
+        if (sequences.get(slot) != published)
+            return null;
+        Entry entry = entries.get(slot);
+        // sequence is read again after the entry, it changed when the entry was replaced
+        if (sequences.get(slot) != published)
+            return null;
+        return entry;
+    }
+
+    private static final class Entry {
+        final long timestamp;
+        final int site;
+        final String label;
+
+        Entry(long timestamp, int site, String label) {
+            this.timestamp = timestamp;
+            this.site = site;
+            this.label = label;
+        }
+    }
+}
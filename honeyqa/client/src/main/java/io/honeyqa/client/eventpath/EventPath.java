@@ -1,5 +1,7 @@
 package io.honeyqa.client.eventpath;
 
+import io.honeyqa.client.collector.DateCollector;
+
 public class EventPath {
 
     private String datetime;
@@ -8,6 +10,10 @@ public class EventPath {
     private String label;
     private int linenum;
 
+    // Deferred date, formatted on first read
+    private long timestamp;
+    private boolean pending;
+
     public EventPath(String datetime, String classname, String methodname, String label,
                      int linenum) {
         super();
@@ -18,36 +24,67 @@ public class EventPath {
         this.label = label;
     }
 
+    /**
+     * Event path whose date is formatted only when read
+     *
+     * @param site call site, null when it was not captured
+     */
+    EventPath(long timestamp, StackTraceElement site, String label) {
+        this.timestamp = timestamp;
+        this.pending = true;
+        if (site != null) {
+            classname = site.getClassName();
+            methodname = site.getMethodName();
+            linenum = site.getLineNumber();
+        }
+        this.label = label;
+    }
+
+    private synchronized void resolve() {
+        if (!pending)
+            return;
+        datetime = DateCollector.GetDate(timestamp);
+        pending = false;
+    }
+
 
     public String getClassName() {
+        resolve();
         return classname;
     }
 
     public void setClassName(String className) {
+        resolve();
         classname = className;
     }
 
     public String getMethodName() {
+        resolve();
         return methodname;
     }
 
     public void setMethodName(String methodName) {
+        resolve();
         methodname = methodName;
     }
 
     public int getLine() {
+        resolve();
         return linenum;
     }
 
     public void setLine(int line) {
+        resolve();
         this.linenum = line;
     }
 
     public String getDatetime() {
+        resolve();
         return datetime;
     }
 
     public void setDatetime(String datetime) {
+        resolve();
         this.datetime = datetime;
     }
 
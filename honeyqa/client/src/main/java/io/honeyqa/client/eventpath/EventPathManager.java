@@ -1,10 +1,24 @@
 package io.honeyqa.client.eventpath;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import io.honeyqa.client.collector.DateCollector;
 import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Okio;
 
 /**
  * @author JeongSeungsu
@@ -12,72 +26,173 @@ import io.honeyqa.client.data.HoneyQAData;
  */
 public class EventPathManager {
 
-    static List<EventPath> EventList = new ArrayList<EventPath>();
+    static volatile EventHistory EventList = new EventHistory(HoneyQAData.MaxEventHistory);
+
+    // Event paths evicted from EventList waiting to be appended to spill file
+    private static final Queue<EventPath> spillQueue = new ConcurrentLinkedQueue<EventPath>();
+    private static final AtomicInteger spillQueueSize = new AtomicInteger();
+    private static final int SPILL_BATCH = 64;
+    private static final long MAX_SPILL_FILE_SIZE = 256 * 1024;
+    private static final String SPILL_FILE = "honeyqa-eventpaths.log";
+    private static final ExecutorService spillExecutor = new ThreadPoolExecutor(0, 1, 30,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            HQ_Util.threadFactory("HoneyQA-EventSpill", true));
 
     // 이러면 걍 스태틱 된다네?
     private static int MaxEventPath = 10;
 
-    private static EventPath ErrorEventPaths[] = new EventPath[MaxEventPath];
-    private static int ErrorEventPathsCounter = 0;
+    private static final AtomicLong ErrorEventPathsCounter = new AtomicLong();
+
+    // Interned call sites, only filled when HoneyQAData.EventCallSite is set
+    private static final int NO_CALL_SITE = -1;
+    private static final int MAX_CALL_SITES = 1024;
+    private static final List<StackTraceElement> callSites = new ArrayList<StackTraceElement>();
+    private static final Map<StackTraceElement, Integer> callSiteIds =
+            new HashMap<StackTraceElement, Integer>();
+
+    /**
+     * Record event path with timestamp, label and the caller Step frames above this
+     * method. The call site is interned, the history keeps only its id; the stack walk
+     * is skipped when {@link HoneyQAData#EventCallSite} is off.
+     */
+    static public void CreateEventPath(int Step, String label) {
+        int site = HoneyQAData.EventCallSite ? captureCallSite(Step + 1) : NO_CALL_SITE;
+        ErrorEventPathsCounter.incrementAndGet();
+        EventPath evicted = EventList.add(System.currentTimeMillis(), site, label,
+                HoneyQAData.SpillEventHistory);
+        if (evicted != null)
+            spill(evicted);
+    }
 
-    static synchronized public void CreateEventPath(int Step, String label) {
-        StackTraceElement[] stackTrace = new Exception().getStackTrace();
+    /**
+     * @return interned id of frame step of the caller, -1 when table is full
+     */
+    private static int captureCallSite(int step) {
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        if (step >= stackTrace.length)
+            return NO_CALL_SITE;
+        StackTraceElement element = stackTrace[step];
+        synchronized (callSites) {
+            Integer id = callSiteIds.get(element);
+            if (id != null)
+                return id;
+            if (callSites.size() >= MAX_CALL_SITES)
+                return NO_CALL_SITE;
+            callSites.add(element);
+            callSiteIds.put(element, callSites.size() - 1);
+            return callSites.size() - 1;
+        }
+    }
 
-        EventPath eventpath = new EventPath(DateCollector.GetDateYYMMDDHHMMSS(HoneyQAData.APP_CONTEXT),
-                stackTrace[Step].getClassName(),
-                stackTrace[Step].getMethodName(),
-                label,
-                stackTrace[Step].getLineNumber());
+    /**
+     * @return call site of interned id, null when not captured
+     */
+    static StackTraceElement getCallSite(int id) {
+        if (id == NO_CALL_SITE)
+            return null;
+        synchronized (callSites) {
+            return callSites.get(id);
+        }
+    }
 
-        ShiftErrorEventPath();
-        ErrorEventPaths[MaxEventPath - 1] = eventpath;
-        ErrorEventPathsCounter++;
+    /**
+     * Change capacity of event path history, latest event paths are kept
+     */
+    static public void SetMaxEventHistory(int capacity) {
+        HoneyQAData.MaxEventHistory = capacity;
+        EventList = EventList.resize(capacity);
+    }
 
-        EventList.add(eventpath);
+    /**
+     * @return all event paths kept in memory, oldest first
+     */
+    static public List<EventPath> getEventPath() {
+        EventHistory history = EventList;
+        return history.last(history.capacity());
     }
 
-    static private void ShiftErrorEventPath() {
-        for (int i = 0; i < MaxEventPath - 1; i++)
-            ErrorEventPaths[i] = ErrorEventPaths[i + 1];
+    /**
+     * @return file which evicted event paths are appended to when
+     * {@link HoneyQAData#SpillEventHistory} is set, one tab separated line per event path
+     */
+    static public File getSpillFile() {
+        if (HoneyQAData.APP_CONTEXT == null)
+            return null;
+        return new File(HoneyQAData.APP_CONTEXT.getCacheDir(), SPILL_FILE);
     }
 
-    static public List<EventPath> getEventPath() {
-        return EventList;
+    private static void spill(EventPath evicted) {
+        spillQueue.add(evicted);
+        if (spillQueueSize.incrementAndGet() % SPILL_BATCH != 0)
+            return;
+        spillExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSpill();
+            }
+        });
     }
 
-    static public List<EventPath> GetErrorEventPath() {
-        List<EventPath> erroreventpaths = new ArrayList<EventPath>();
-        // MaxEventPath : 10
-        int MaxCounter = ErrorEventPathsCounter;
-        if (MaxCounter >= MaxEventPath)
-            MaxCounter = MaxEventPath;
+    /**
+     * Append event paths waiting for the next spill batch on the calling thread, so the
+     * spill file is complete when a report is built or the process dies
+     */
+    static public void flushSpill() {
+        if (!spillQueue.isEmpty())
+            writeSpill();
+    }
 
-        for (int i = MaxEventPath - MaxCounter; i < MaxEventPath; i++) {
-            erroreventpaths.add(ErrorEventPaths[i]);
+    private static synchronized void writeSpill() {
+        File file = getSpillFile();
+        if (file == null) {
+            spillQueue.clear();
+            return;
+        }
+        if (file.length() > MAX_SPILL_FILE_SIZE)
+            file.renameTo(new File(file.getPath() + ".old"));
+        BufferedSink sink = null;
+        try {
+            sink = Okio.buffer(Okio.appendingSink(file));
+            EventPath eventpath;
+            while ((eventpath = spillQueue.poll()) != null) {
+                sink.writeUtf8(eventpath.getDatetime()).writeByte('\t')
+                        .writeUtf8(String.valueOf(eventpath.getClassName())).writeByte('\t')
+                        .writeUtf8(String.valueOf(eventpath.getMethodName())).writeByte('\t')
+                        .writeDecimalLong(eventpath.getLine()).writeByte('\t')
+                        .writeUtf8(String.valueOf(eventpath.getLabel())).writeByte('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            HQ_Util.closeQuietly(sink);
         }
+    }
 
-        return erroreventpaths;
+    /**
+     * @return last event paths of history for error report, oldest first
+     */
+    static public List<EventPath> GetErrorEventPath() {
+        // MaxEventPath : 10
+        return EventList.recent(MaxEventPath);
     }
 
     static public int GetErrorEventPathCounter() {
-        return ErrorEventPathsCounter;
+        return (int) ErrorEventPathsCounter.get();
     }
 
+    /**
+     * Clear event paths returned by {@link #getEventPath()}, latest ones are still
+     * attached to error reports
+     */
     static public void ClearEvent() {
         EventList.clear();
     }
 
+    /**
+     * @return last number event paths, oldest first, without copying whole history
+     */
     static public List<EventPath> GetNumberofEventPath(int number) {
-        int listsize = EventList.size();
-        int startnum = listsize - number;
-        List<EventPath> numeventpath = new ArrayList<EventPath>();
-        if (startnum < 0)
-            startnum = 0;
-
-        for (int i = startnum; i < listsize; i++) {
-            numeventpath.add(EventList.get(i));
-        }
-        return numeventpath;
+        return EventList.last(number);
     }
 
 }
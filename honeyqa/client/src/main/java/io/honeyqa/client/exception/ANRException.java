@@ -0,0 +1,15 @@
+package io.honeyqa.client.exception;
+
+/**
+ * Main thread stall detected by {@link ANRWatchdog}, stack trace is the main thread's
+ * stack at detection time.
+ */
+public class ANRException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ANRException(long blockedMillis, StackTraceElement[] mainStack) {
+        super("main thread blocked for " + blockedMillis + " ms");
+        setStackTrace(mainStack);
+    }
+}
@@ -0,0 +1,108 @@
+package io.honeyqa.client.exception;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import io.honeyqa.client.collector.ErrorReport;
+import io.honeyqa.client.collector.ErrorReportFactory;
+import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.network.NetworkResource;
+import io.honeyqa.client.network.Sender;
+import io.honeyqa.client.rank.ErrorRank;
+
+/**
+ * Background thread which posts a ping to the main Looper and checks it was handled.
+ * When the main thread does not answer within {@link HoneyQAData#ANRThreshold} ms, its
+ * stack and the breadcrumbs are reported once as {@link ErrorRank#ANR}; the next stall is
+ * reported after the main thread answered again.
+ * <p/>
+ * The main thread only increments a counter, all collection runs on the watchdog thread.
+ * Stalls while a debugger is attached are ignored.
+ */
+public class ANRWatchdog implements Runnable {
+
+    private static Thread watchdog;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile long pongs = 0;
+    private final Runnable pong = new Runnable() {
+        @Override
+        public void run() {
+            pongs++; // main thread is the only writer
+        }
+    };
+
+    private ANRWatchdog(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Start watchdog unless running or {@link HoneyQAData#ANRThreshold} is 0
+     */
+    public static synchronized void start(Context context) {
+        if (watchdog != null || HoneyQAData.ANRThreshold <= 0)
+            return;
+        watchdog = new Thread(new ANRWatchdog(context), "HoneyQA-ANR");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    public static synchronized void stop() {
+        if (watchdog != null) {
+            watchdog.interrupt();
+            watchdog = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean reported = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            long threshold = HoneyQAData.ANRThreshold;
+            if (threshold <= 0)
+                return;
+            long before = pongs;
+            long postedAt = SystemClock.uptimeMillis();
+            mainHandler.post(pong);
+            try {
+                // one ping in flight at a time, wait until it is handled or stall is reported
+                do {
+                    Thread.sleep(threshold);
+                    if (pongs != before) {
+                        reported = false;
+                    } else if (!reported && !Debug.isDebuggerConnected()) {
+                        report(SystemClock.uptimeMillis() - postedAt);
+                        reported = true;
+                    }
+                } while (pongs == before);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void report(long blockedMillis) {
+        ANRException anr = new ANRException(blockedMillis,
+                Looper.getMainLooper().getThread().getStackTrace());
+        Log.e(HoneyQAData.HONEYQA_SDK_LOG, anr.getMessage());
+        String fingerprint = ExceptionRateLimiter.acquire(anr, ErrorRank.ANR);
+        if (fingerprint == null)
+            return;
+        try {
+            ErrorReport report = ErrorReportFactory.createExceptionReport(anr, "",
+                    ErrorRank.ANR, context, fingerprint);
+            if (!Sender.saveOccurrence(context, report, false)) {
+                ErrorReportFactory.completeErrorReport(report, context);
+                Sender.saveException(report);
+            }
+            Sender.flushExceptions(context, NetworkResource.EXCEPTION_URL);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
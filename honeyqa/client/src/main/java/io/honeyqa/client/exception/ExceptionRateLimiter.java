@@ -0,0 +1,113 @@
+package io.honeyqa.client.exception;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.honeyqa.client.collector.CrashFingerprint;
+import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.rank.ErrorRank;
+
+/**
+ * Decides whether a handled exception is reported at all, before anything is collected.
+ * <p/>
+ * Checks sampling rate of the {@link ErrorRank} first, then a token bucket per crash
+ * fingerprint and a global token bucket. The fingerprint bucket is checked first so a
+ * single hot exception cannot drain the global bucket for all others. Buckets hold up
+ * to a burst of tokens and refill at a rate per minute, see {@link HoneyQAData}.
+ * Dropped exceptions are counted.
+ */
+public class ExceptionRateLimiter {
+
+    private static final Random random = new Random();
+    private static final Bucket global = new Bucket();
+    private static final Map<String, Bucket> fingerprints =
+            new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                    return size() > HoneyQAData.MaxFingerprints;
+                }
+            };
+
+    private static final AtomicInteger sampledCount = new AtomicInteger();
+    private static final AtomicInteger globalLimitedCount = new AtomicInteger();
+    private static final AtomicInteger fingerprintLimitedCount = new AtomicInteger();
+
+    /**
+     * @return crash fingerprint when exception may be reported, to be passed on to the
+     * report, null when it is dropped
+     */
+    public static String acquire(Throwable throwable, ErrorRank rank) {
+        float rate = HoneyQAData.SampleRates[rank.ordinal()];
+        if (rate < 1f && random.nextFloat() >= rate) {
+            sampledCount.incrementAndGet();
+            return null;
+        }
+        long now = SystemClock.elapsedRealtime();
+        String fingerprint = CrashFingerprint.compute(throwable, HoneyQAData.FingerprintFrames);
+        Bucket bucket;
+        synchronized (fingerprints) {
+            bucket = fingerprints.get(fingerprint);
+            if (bucket == null) {
+                bucket = new Bucket();
+                fingerprints.put(fingerprint, bucket);
+            }
+        }
+        if (!bucket.take(HoneyQAData.FingerprintBurst, HoneyQAData.FingerprintsPerMinute, now)) {
+            fingerprintLimitedCount.incrementAndGet();
+            return null;
+        }
+        if (!global.take(HoneyQAData.ExceptionBurst, HoneyQAData.ExceptionsPerMinute, now)) {
+            bucket.refund(HoneyQAData.FingerprintBurst);
+            globalLimitedCount.incrementAndGet();
+            return null;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return number of exceptions dropped by sampling
+     */
+    public static int getSampledCount() {
+        return sampledCount.get();
+    }
+
+    /**
+     * @return number of exceptions dropped by global limit
+     */
+    public static int getGlobalLimitedCount() {
+        return globalLimitedCount.get();
+    }
+
+    /**
+     * @return number of exceptions dropped by per fingerprint limit
+     */
+    public static int getFingerprintLimitedCount() {
+        return fingerprintLimitedCount.get();
+    }
+
+    private static class Bucket {
+        private double tokens = -1;
+        private long lastRefill;
+
+        synchronized boolean take(int burst, double perMinute, long now) {
+            if (tokens < 0) {
+                tokens = burst;
+            } else {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * perMinute / 60000d);
+            }
+            lastRefill = now;
+            if (tokens < 1)
+                return false;
+            tokens--;
+            return true;
+        }
+
+        synchronized void refund(int burst) {
+            tokens = Math.min(burst, tokens + 1);
+        }
+    }
+}
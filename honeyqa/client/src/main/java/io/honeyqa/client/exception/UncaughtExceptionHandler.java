@@ -1,10 +1,14 @@
 package io.honeyqa.client.exception;
 
+import android.os.SystemClock;
+
+import java.io.File;
+
 import io.honeyqa.client.collector.ErrorReport;
 import io.honeyqa.client.collector.ErrorReportFactory;
 import io.honeyqa.client.network.Sender;
 import io.honeyqa.client.data.HoneyQAData;
-import io.honeyqa.client.network.NetworkResource;
+import io.honeyqa.client.eventpath.EventPathManager;
 import io.honeyqa.client.rank.ErrorRank;
 
 public class UncaughtExceptionHandler implements
@@ -26,10 +30,7 @@ public class UncaughtExceptionHandler implements
     @Override
     public void uncaughtException(Thread thread, Throwable ex) {
         try {
-            ErrorReport report = ErrorReportFactory.createErrorReport(ex, "",
-                    ErrorRank.Unhandle, HoneyQAData.APP_CONTEXT);
-            // TODO : URL validation
-            Sender.sendException(report, NetworkResource.EXCEPTION_URL);
+            saveReport(ex);
             if (mUncaughtExceptionHandler != null)
                 mUncaughtExceptionHandler.uncaughtException(thread, ex);
         } catch (Throwable e) {
@@ -38,4 +39,25 @@ public class UncaughtExceptionHandler implements
             mDefaultExceptionHandler.uncaughtException(thread, ex);
         }
     }
+
+    /**
+     * Save report in stages, cheapest first, so a process killed while collecting
+     * still leaves the exception on disk. A crash repeated within
+     * {@link HoneyQAData#DedupWindow} is saved as a compact occurrence. Device data and log are added while
+     * {@link HoneyQAData#CrashTimeBudget} lasts; network I/O is left for next launch.
+     */
+    private static void saveReport(Throwable ex) {
+        long deadline = SystemClock.uptimeMillis() + HoneyQAData.CrashTimeBudget;
+        ErrorReport report = ErrorReportFactory.createExceptionReport(ex, "",
+                ErrorRank.Unhandle, HoneyQAData.APP_CONTEXT);
+        if (Sender.saveOccurrence(HoneyQAData.APP_CONTEXT, report, true))
+            return;
+        File record = Sender.saveException(report);
+        // evicted breadcrumbs go to disk only once the exception is safe
+        EventPathManager.flushSpill();
+        if (ErrorReportFactory.addDeviceData(report, HoneyQAData.APP_CONTEXT, deadline))
+            Sender.updateException(record, report);
+        if (ErrorReportFactory.addLog(report, HoneyQAData.APP_CONTEXT, deadline))
+            Sender.updateException(record, report);
+    }
 }
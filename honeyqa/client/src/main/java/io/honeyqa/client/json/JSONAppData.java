@@ -3,6 +3,8 @@ package io.honeyqa.client.json;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 import io.honeyqa.client.json.JSONInterface;
 
 public class JSONAppData implements JSONInterface {
@@ -19,4 +21,12 @@ public class JSONAppData implements JSONInterface {
         }
         return object;
     }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("apikey").value(apikey)
+                .name("appversion").value(appversion)
+                .endObject();
+    }
 }
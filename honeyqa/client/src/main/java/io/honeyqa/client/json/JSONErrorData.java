@@ -1,5 +1,6 @@
 package io.honeyqa.client.json;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -62,10 +63,21 @@ public class JSONErrorData implements JSONInterface {
     public int rank;
 
     /**
-     * CallStack데이터
+     * CallStack데이터, "" when {@link HoneyQAData#TextCallstack} is off
      */
     public String callstack;
 
+    /**
+     * Structured callstack, only when {@link HoneyQAData#TextCallstack} is off, null for
+     * native errors
+     */
+    public JSONStackTrace stacktrace;
+
+    /**
+     * Exception type + top app frames hash, see CrashFingerprint
+     */
+    public String fingerprint;
+
     /**
      * APIKEY
      */
@@ -210,6 +222,9 @@ public class JSONErrorData implements JSONInterface {
             object.put("tag", tag);
             object.put("rank", rank);
             object.put("callstack", callstack);
+            object.put("fingerprint", fingerprint);
+            if (stacktrace != null)
+                object.put("stacktrace", stacktrace.toJSONObject());
             object.put("apikey", apikey);
             object.put("datetime", datetime);
             object.put("device", device);
@@ -245,6 +260,58 @@ public class JSONErrorData implements JSONInterface {
         return object;
     }
 
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("sdkversion").value(sdkversion)
+                .name("locale").value(locale)
+                .name("tag").value(tag)
+                .name("rank").value(rank)
+                .name("callstack").value(callstack)
+                .name("fingerprint").value(fingerprint);
+        if (stacktrace != null)
+            writer.name("stacktrace").value(stacktrace);
+        writer.name("apikey").value(apikey)
+                .name("datetime").value(datetime)
+                .name("device").value(device)
+                .name("country").value(country)
+                .name("errorname").value(errorname)
+                .name("errorclassname").value(errorclassname)
+                .name("linenum").value(linenum)
+                .name("appversion").value(appversion)
+                .name("osversion").value(osversion)
+                .name("gpson").value(gpson)
+                .name("wifion").value(wifion)
+                .name("mobileon").value(mobileon)
+                .name("scrwidth").value(scrwidth)
+                .name("scrheight").value(scrheight)
+                .name("batterylevel").value(batterylevel)
+                .name("availsdcard").value(availsdcard)
+                .name("rooted").value(rooted)
+                .name("appmemtotal").value(appmemtotal)
+                .name("appmemfree").value(appmemfree)
+                .name("appmemmax").value(appmemmax)
+                .name("kernelversion").value(kernelversion)
+                .name("xdpi").value(xdpi)
+                .name("ydpi").value(ydpi)
+                .name("scrorientation").value(scrorientation)
+                .name("sysmemlow").value(sysmemlow)
+                .name("lastactivity").value(lastactivity)
+                .name("carrier_name").value(mCarrierName)
+                .name("device_id").value(mDeviceId);
+        writer.name("eventpaths").beginArray();
+        for (EventPath eventpath : eventpaths) {
+            writer.beginObject()
+                    .name("datetime").value(eventpath.getDatetime())
+                    .name("classname").value(eventpath.getClassName())
+                    .name("methodname").value(eventpath.getMethodName())
+                    .name("label").value(eventpath.getLabel())
+                    .name("linenum").value(eventpath.getLine())
+                    .endObject();
+        }
+        writer.endArray().endObject();
+    }
+
     /**
      * Event Path 계산
      *
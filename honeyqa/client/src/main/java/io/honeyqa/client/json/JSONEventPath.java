@@ -1,5 +1,6 @@
 package io.honeyqa.client.json;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -36,4 +37,20 @@ public class JSONEventPath implements JSONInterface {
             return null;
         }
     }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject().name("idsession").value(idsession);
+        writer.name("eventpaths").beginArray();
+        for (int i = 0; i < eventpaths.size(); i++) {
+            EventPath event = eventpaths.get(i);
+            writer.beginObject()
+                    .name("datetime").value(event.getDatetime())
+                    .name("classname").value(event.getClassName())
+                    .name("methodname").value(event.getMethodName())
+                    .name("linenum").value(event.getLine())
+                    .endObject();
+        }
+        writer.endArray().endObject();
+    }
 }
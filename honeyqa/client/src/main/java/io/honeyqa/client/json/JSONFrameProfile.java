@@ -0,0 +1,155 @@
+package io.honeyqa.client.json;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.honeyqa.client.data.HoneyQAData;
+
+/**
+ * Aggregated main thread profile: frame duration histogram and counts of frames found on
+ * top of the main thread stack while a frame ran over budget.
+ */
+public class JSONFrameProfile implements JSONInterface {
+    /**
+     * upper bounds of histogram buckets in ms, last bucket counts longer frames
+     */
+    public long[] bucketBounds;
+    public long[] frames;
+    public long budget;
+    public long duration;
+    public long samples;
+    public Map<String, Integer> hotFrames;
+    /**
+     * samples not counted in hotFrames because the table was full
+     */
+    public long otherSamples;
+
+    /**
+     * Add up two profiles of the same histogram, e.g. of two launches on one day
+     *
+     * @return sum of both, later alone when bucket bounds differ, null when both are null
+     */
+    public static JSONObject merge(JSONObject earlier, JSONObject later) {
+        if (earlier == null)
+            return later;
+        if (later == null)
+            return earlier;
+        JSONFrameProfile merged = fromJSONObject(earlier);
+        if (!merged.add(fromJSONObject(later)))
+            return later;
+        return merged.toJSONObject();
+    }
+
+    /**
+     * Parse a profile written by {@link #toJSONObject()} or {@link #writeJSON}
+     */
+    public static JSONFrameProfile fromJSONObject(JSONObject object) {
+        JSONFrameProfile profile = new JSONFrameProfile();
+        profile.duration = object.optLong("duration_ms");
+        profile.budget = object.optLong("budget_ms");
+        profile.bucketBounds = toLongs(object.optJSONArray("bucket_ms"));
+        profile.frames = toLongs(object.optJSONArray("frames"));
+        profile.samples = object.optLong("samples");
+        profile.hotFrames = new LinkedHashMap<String, Integer>();
+        JSONArray hot = object.optJSONArray("hot_frames");
+        for (int i = 0; hot != null && i < hot.length(); i++) {
+            JSONObject entry = hot.optJSONObject(i);
+            if (entry != null)
+                profile.hotFrames.put(entry.optString("frame"), entry.optInt("count"));
+        }
+        profile.otherSamples = object.optLong("other_samples");
+        return profile;
+    }
+
+    /**
+     * Add counts of other to this profile. Hot frames beyond
+     * {@link HoneyQAData#MaxHotFrames} are counted in otherSamples, like the sampler does.
+     *
+     * @return false when bucket bounds differ, nothing is added then
+     */
+    public boolean add(JSONFrameProfile other) {
+        if (!Arrays.equals(bucketBounds, other.bucketBounds) || frames.length != other.frames.length)
+            return false;
+        for (int i = 0; i < frames.length; i++)
+            frames[i] += other.frames[i];
+        duration += other.duration;
+        budget = other.budget;
+        samples += other.samples;
+        for (Map.Entry<String, Integer> entry : other.hotFrames.entrySet()) {
+            Integer count = hotFrames.get(entry.getKey());
+            if (count != null)
+                hotFrames.put(entry.getKey(), count + entry.getValue());
+            else if (hotFrames.size() < HoneyQAData.MaxHotFrames)
+                hotFrames.put(entry.getKey(), entry.getValue());
+            else
+                otherSamples += entry.getValue();
+        }
+        otherSamples += other.otherSamples;
+        return true;
+    }
+
+    private static long[] toLongs(JSONArray array) {
+        long[] values = new long[array != null ? array.length() : 0];
+        for (int i = 0; i < values.length; i++)
+            values[i] = array.optLong(i);
+        return values;
+    }
+
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        try {
+            JSONArray bounds = new JSONArray();
+            for (long bound : bucketBounds)
+                bounds.put(bound);
+            JSONArray counts = new JSONArray();
+            for (long count : frames)
+                counts.put(count);
+            JSONArray hot = new JSONArray();
+            for (Map.Entry<String, Integer> entry : hotFrames.entrySet())
+                hot.put(new JSONObject().put("frame", entry.getKey()).put("count", entry.getValue()));
+            object.put("duration_ms", duration);
+            object.put("budget_ms", budget);
+            object.put("bucket_ms", bounds);
+            object.put("frames", counts);
+            object.put("samples", samples);
+            object.put("hot_frames", hot);
+            object.put("other_samples", otherSamples);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("duration_ms").value(duration)
+                .name("budget_ms").value(budget);
+        writer.name("bucket_ms").beginArray();
+        for (long bound : bucketBounds)
+            writer.value(bound);
+        writer.endArray();
+        writer.name("frames").beginArray();
+        for (long count : frames)
+            writer.value(count);
+        writer.endArray();
+        writer.name("samples").value(samples);
+        writer.name("hot_frames").beginArray();
+        for (Map.Entry<String, Integer> entry : hotFrames.entrySet()) {
+            writer.beginObject()
+                    .name("frame").value(entry.getKey())
+                    .name("count").value(entry.getValue())
+                    .endObject();
+        }
+        writer.endArray();
+        writer.name("other_samples").value(otherSamples);
+        writer.endObject();
+    }
+}
@@ -2,7 +2,14 @@ package io.honeyqa.client.json;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public interface JSONInterface {
 
     JSONObject toJSONObject();
+
+    /**
+     * Stream same content as {@link #toJSONObject()} into writer
+     */
+    void writeJSON(JSONStreamWriter writer) throws IOException;
 }
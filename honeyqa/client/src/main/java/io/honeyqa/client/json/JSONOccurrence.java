@@ -0,0 +1,57 @@
+package io.honeyqa.client.json;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Compact record of a crash repeated within the deduplication window, sent instead of
+ * the full {@link JSONErrorData}. The full report was sent for the first occurrence.
+ * Repeats are added to one record until it is uploaded, the server adds up counts.
+ */
+public class JSONOccurrence implements JSONInterface {
+    public String apikey;
+    public String fingerprint;
+    public String errorname;
+    public int rank;
+    public String datetime;
+    public String appversion;
+    public String mDeviceId;
+    /**
+     * repeats since previous occurrence record of the fingerprint, datetime is the last one
+     */
+    public int count;
+
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        try {
+            object.put("apikey", apikey);
+            object.put("fingerprint", fingerprint);
+            object.put("errorname", errorname);
+            object.put("rank", rank);
+            object.put("datetime", datetime);
+            object.put("appversion", appversion);
+            object.put("device_id", mDeviceId);
+            object.put("count", count);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("apikey").value(apikey)
+                .name("fingerprint").value(fingerprint)
+                .name("errorname").value(errorname)
+                .name("rank").value(rank)
+                .name("datetime").value(datetime)
+                .name("appversion").value(appversion)
+                .name("device_id").value(mDeviceId)
+                .name("count").value(count)
+                .endObject();
+    }
+}
@@ -0,0 +1,251 @@
+package io.honeyqa.client.json;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack trace of a throwable with its cause chain and suppressed throwables, built
+ * from getStackTrace() without printing.
+ * <p/>
+ * Class, method and file names are stored once in a string table and every distinct
+ * frame once in a frame table, throwables refer to frames by index. Frames a throwable
+ * has in common with its enclosing trace are counted, not repeated, like
+ * printStackTrace's "... n more". At most maxDepth frames are kept per throwable.
+ * <p/>
+ * JSON form:
+ * <pre>
+ * {"strings":["com.app.Main","run","Main.java"],
+ *  "frames":[0,1,2,42],          // class, method, file (-1 unknown), line per frame
+ *  "throwables":[{"name":"java.lang.IllegalStateException: msg","frames":[0],
+ *                 "common":0,"truncated":0,"cause":-1,"suppressed":[]}]}
+ * </pre>
+ */
+public class JSONStackTrace implements JSONInterface {
+
+    private static final int MAX_THROWABLES = 16;
+    private static final int NATIVE_METHOD = -2;
+    // Throwable.getSuppressed exists from API 19 and Java 7
+    private static final boolean HAS_SUPPRESSED = hasSuppressed();
+
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+    private final List<int[]> frames = new ArrayList<int[]>();
+    private final Map<StackTraceElement, Integer> frameIndex = new HashMap<StackTraceElement, Integer>();
+    private final List<Node> throwables = new ArrayList<Node>();
+    private final int maxDepth;
+
+    private static class Node {
+        String name;
+        int[] frames;
+        int common;
+        int truncated;
+        int cause = -1;
+        List<Integer> suppressed = new ArrayList<Integer>(0);
+    }
+
+    public JSONStackTrace(Throwable throwable, int maxDepth) {
+        this.maxDepth = Math.max(maxDepth, 1);
+        add(throwable, new StackTraceElement[0], new IdentityHashMap<Throwable, Boolean>());
+    }
+
+    /**
+     * @return toString() of the throwable, e.g. "java.lang.IllegalStateException: msg"
+     */
+    public String getName() {
+        return throwables.get(0).name;
+    }
+
+    /**
+     * Same text as Throwable.printStackTrace, with truncated frames counted
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        print(text, 0, "", "");
+        return text.toString();
+    }
+
+    @Override
+    public JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        try {
+            JSONArray stringArray = new JSONArray();
+            for (String string : strings)
+                stringArray.put(string);
+            JSONArray frameArray = new JSONArray();
+            for (int[] frame : frames) {
+                for (int value : frame)
+                    frameArray.put(value);
+            }
+            JSONArray throwableArray = new JSONArray();
+            for (Node node : throwables) {
+                JSONArray nodeFrames = new JSONArray();
+                for (int frame : node.frames)
+                    nodeFrames.put(frame);
+                JSONArray suppressed = new JSONArray();
+                for (int index : node.suppressed)
+                    suppressed.put(index);
+                throwableArray.put(new JSONObject()
+                        .put("name", node.name)
+                        .put("frames", nodeFrames)
+                        .put("common", node.common)
+                        .put("truncated", node.truncated)
+                        .put("cause", node.cause)
+                        .put("suppressed", suppressed));
+            }
+            object.put("strings", stringArray);
+            object.put("frames", frameArray);
+            object.put("throwables", throwableArray);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    @Override
+    public void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("strings").beginArray();
+        for (String string : strings)
+            writer.value(string);
+        writer.endArray();
+        writer.name("frames").beginArray();
+        for (int[] frame : frames) {
+            for (int value : frame)
+                writer.value(value);
+        }
+        writer.endArray();
+        writer.name("throwables").beginArray();
+        for (Node node : throwables) {
+            writer.beginObject().name("name").value(node.name);
+            writer.name("frames").beginArray();
+            for (int frame : node.frames)
+                writer.value(frame);
+            writer.endArray();
+            writer.name("common").value(node.common)
+                    .name("truncated").value(node.truncated)
+                    .name("cause").value(node.cause);
+            writer.name("suppressed").beginArray();
+            for (int index : node.suppressed)
+                writer.value(index);
+            writer.endArray().endObject();
+        }
+        writer.endArray().endObject();
+    }
+
+    /**
+     * @return index of throwable, -1 when skipped because of a cycle or too many throwables
+     */
+    private int add(Throwable throwable, StackTraceElement[] enclosing, Map<Throwable, Boolean> seen) {
+        if (throwable == null || seen.containsKey(throwable) || throwables.size() >= MAX_THROWABLES)
+            return -1;
+        seen.put(throwable, Boolean.TRUE);
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        int last = trace.length - 1;
+        int enclosingLast = enclosing.length - 1;
+        while (last >= 0 && enclosingLast >= 0 && trace[last].equals(enclosing[enclosingLast])) {
+            last--;
+            enclosingLast--;
+        }
+        int unique = last + 1;
+        int shown = Math.min(unique, maxDepth);
+
+        Node node = new Node();
+        node.name = throwable.toString();
+        node.common = trace.length - unique;
+        node.truncated = unique - shown;
+        node.frames = new int[shown];
+        for (int i = 0; i < shown; i++)
+            node.frames[i] = frame(trace[i]);
+        int index = throwables.size();
+        throwables.add(node);
+
+        if (HAS_SUPPRESSED) {
+            for (Throwable suppressed : getSuppressed(throwable)) {
+                int suppressedIndex = add(suppressed, trace, seen);
+                if (suppressedIndex >= 0)
+                    node.suppressed.add(suppressedIndex);
+            }
+        }
+        node.cause = add(throwable.getCause(), trace, seen);
+        return index;
+    }
+
+    private static boolean hasSuppressed() {
+        try {
+            Throwable.class.getMethod("getSuppressed");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static Throwable[] getSuppressed(Throwable throwable) {
+        return throwable.getSuppressed();
+    }
+
+    private int frame(StackTraceElement element) {
+        Integer index = frameIndex.get(element);
+        if (index != null)
+            return index;
+        int line = element.isNativeMethod() ? NATIVE_METHOD : element.getLineNumber();
+        frames.add(new int[]{string(element.getClassName()), string(element.getMethodName()),
+                string(element.getFileName()), line});
+        index = frames.size() - 1;
+        frameIndex.put(element, index);
+        return index;
+    }
+
+    private int string(String value) {
+        if (value == null)
+            return -1;
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void print(StringBuilder text, int index, String caption, String prefix) {
+        Node node = throwables.get(index);
+        text.append(prefix).append(caption).append(node.name).append('\n');
+        for (int frame : node.frames) {
+            int[] values = frames.get(frame);
+            text.append(prefix).append("\tat ").append(strings.get(values[0]))
+                    .append('.').append(strings.get(values[1])).append('(');
+            String file = values[2] < 0 ? null : strings.get(values[2]);
+            if (values[3] == NATIVE_METHOD)
+                text.append("Native Method");
+            else if (file == null)
+                text.append("Unknown Source");
+            else if (values[3] >= 0)
+                text.append(file).append(':').append(values[3]);
+            else
+                text.append(file);
+            text.append(")\n");
+        }
+        if (node.truncated > 0)
+            text.append(prefix).append("\t... ").append(node.truncated).append(" truncated\n");
+        if (node.common > 0)
+            text.append(prefix).append("\t... ").append(node.common).append(" more\n");
+        for (int suppressed : node.suppressed)
+            print(text, suppressed, "Suppressed: ", prefix + "\t");
+        if (node.cause >= 0)
+            print(text, node.cause, "Caused by: ", prefix);
+    }
+}
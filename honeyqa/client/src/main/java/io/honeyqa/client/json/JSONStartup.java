@@ -0,0 +1,97 @@
+package io.honeyqa.client.json;
+
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of SDK initialization, stage by stage, sent with the first session.
+ * Stages are marked in order, each one lasts from the previous mark.
+ */
+public class JSONStartup implements JSONInterface {
+
+    private final String mode;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Long> micros = new ArrayList<Long>();
+    private final List<Boolean> mainThread = new ArrayList<Boolean>();
+    private long last = System.nanoTime();
+
+    /**
+     * @param mode "sync" or "async"
+     */
+    public JSONStartup(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * End stage started by previous mark
+     */
+    public synchronized void mark(String stage) {
+        long now = System.nanoTime();
+        names.add(stage);
+        micros.add((now - last) / 1000);
+        mainThread.add(Looper.myLooper() == Looper.getMainLooper());
+        last = now;
+    }
+
+    /**
+     * Start next stage now, e.g. when work continues on another thread after waiting
+     */
+    public synchronized void resume() {
+        last = System.nanoTime();
+    }
+
+    /**
+     * @return microseconds spent in stages marked on main thread
+     */
+    public synchronized long getMainThreadMicros() {
+        long total = 0;
+        for (int i = 0; i < micros.size(); i++) {
+            if (mainThread.get(i))
+                total += micros.get(i);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        try {
+            JSONArray stages = new JSONArray();
+            for (int i = 0; i < names.size(); i++) {
+                stages.put(new JSONObject()
+                        .put("name", names.get(i))
+                        .put("us", micros.get(i))
+                        .put("main", mainThread.get(i)));
+            }
+            object.put("mode", mode);
+            object.put("main_thread_us", getMainThreadMicros());
+            object.put("stages", stages);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return object;
+    }
+
+    @Override
+    public synchronized void writeJSON(JSONStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("mode").value(mode)
+                .name("main_thread_us").value(getMainThreadMicros());
+        writer.name("stages").beginArray();
+        for (int i = 0; i < names.size(); i++) {
+            writer.beginObject()
+                    .name("name").value(names.get(i))
+                    .name("us").value(micros.get(i))
+                    .name("main").value(mainThread.get(i))
+                    .endObject();
+        }
+        writer.endArray().endObject();
+    }
+}
@@ -0,0 +1,205 @@
+package io.honeyqa.client.json;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import io.honeyqa.client.network.Base64Sink;
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Source;
+
+/**
+ * Writes JSON directly into a sink, without building a JSONObject tree or an
+ * intermediate String of the whole document.
+ */
+public class JSONStreamWriter {
+
+    private static final int MAX_DEPTH = 32;
+    private static final long BASE64_READ_SIZE = 8192;
+
+    private final BufferedSink sink;
+    private final boolean[] hasElement = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JSONStreamWriter(BufferedSink sink) {
+        this.sink = sink;
+    }
+
+    public JSONStreamWriter beginObject() throws IOException {
+        beforeValue();
+        open('{');
+        return this;
+    }
+
+    public JSONStreamWriter endObject() throws IOException {
+        close('}');
+        return this;
+    }
+
+    public JSONStreamWriter beginArray() throws IOException {
+        beforeValue();
+        open('[');
+        return this;
+    }
+
+    public JSONStreamWriter endArray() throws IOException {
+        close(']');
+        return this;
+    }
+
+    public JSONStreamWriter name(String name) throws IOException {
+        if (afterName)
+            throw new IllegalStateException("value expected after " + name);
+        beforeElement();
+        string(name);
+        sink.writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JSONStreamWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null)
+            sink.writeUtf8("null");
+        else
+            string(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(long value) throws IOException {
+        beforeValue();
+        sink.writeDecimalLong(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            sink.writeUtf8("null");
+        else
+            sink.writeUtf8(Double.toString(value));
+        return this;
+    }
+
+    public JSONStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        sink.writeUtf8(value ? "true" : "false");
+        return this;
+    }
+
+    public JSONStreamWriter value(JSONInterface value) throws IOException {
+        if (value == null) {
+            beforeValue();
+            sink.writeUtf8("null");
+        } else {
+            value.writeJSON(this);
+        }
+        return this;
+    }
+
+    /**
+     * Copy already encoded JSON value from source
+     */
+    public JSONStreamWriter rawValue(Source source) throws IOException {
+        beforeValue();
+        sink.writeAll(source);
+        return this;
+    }
+
+    /**
+     * Write bytes of source as a Base64 string value, source is encoded chunk by chunk
+     */
+    public JSONStreamWriter base64Value(Source source) throws IOException {
+        Base64Sink encoder = beginBase64Value();
+        Buffer buffer = new Buffer();
+        while (source.read(buffer, BASE64_READ_SIZE) != -1)
+            encoder.write(buffer, buffer.size());
+        return endBase64Value(encoder);
+    }
+
+    /**
+     * Start a Base64 string value for bytes produced by another sink chain.
+     * Write the bytes to the returned sink, then call {@link #endBase64Value}.
+     */
+    public Base64Sink beginBase64Value() throws IOException {
+        beforeValue();
+        sink.writeByte('"');
+        return new Base64Sink(sink);
+    }
+
+    public JSONStreamWriter endBase64Value(Base64Sink encoder) throws IOException {
+        encoder.finish();
+        sink.writeByte('"');
+        return this;
+    }
+
+    /**
+     * @return sink this writer emits to
+     */
+    public BufferedSink sink() {
+        return sink;
+    }
+
+    private void open(char bracket) throws IOException {
+        if (depth == MAX_DEPTH)
+            throw new IllegalStateException("nesting too deep");
+        sink.writeByte(bracket);
+        hasElement[depth++] = false;
+    }
+
+    private void close(char bracket) throws IOException {
+        if (depth == 0 || afterName)
+            throw new IllegalStateException("nothing to close");
+        depth--;
+        sink.writeByte(bracket);
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        beforeElement();
+    }
+
+    private void beforeElement() throws IOException {
+        if (depth == 0)
+            return;
+        if (hasElement[depth - 1])
+            sink.writeByte(',');
+        hasElement[depth - 1] = true;
+    }
+
+    private void string(String value) throws IOException {
+        sink.writeByte('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                replacement = String.format(Locale.US, "\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            if (start < i)
+                sink.writeUtf8(value, start, i);
+            sink.writeUtf8(replacement);
+            start = i + 1;
+        }
+        if (start < length)
+            sink.writeUtf8(value, start, length);
+        sink.writeByte('"');
+    }
+}
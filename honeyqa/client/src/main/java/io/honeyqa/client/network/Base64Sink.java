@@ -0,0 +1,109 @@
+package io.honeyqa.client.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Sink;
+import io.honeyqa.client.network.okio.Timeout;
+
+/**
+ * Sink which Base64 encodes (RFC 2045, no line wrap) everything written to it.
+ * Only a fixed size chunk is held in memory, whatever the size of the input.
+ */
+public final class Base64Sink implements Sink {
+
+    private static final byte[] MAP = new byte[]{
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
+            'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f',
+            'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v',
+            'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'};
+
+    private static final int CHUNK_SIZE = 3 * 1024;
+
+    private final BufferedSink sink;
+    private final byte[] in = new byte[CHUNK_SIZE];
+    private final byte[] out = new byte[CHUNK_SIZE / 3 * 4];
+    private int pending = 0;
+
+    public Base64Sink(BufferedSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+        while (byteCount > 0) {
+            int toRead = (int) Math.min(byteCount, CHUNK_SIZE - pending);
+            int read = source.read(in, pending, toRead);
+            if (read == -1)
+                throw new EOFException();
+            pending += read;
+            byteCount -= read;
+            int whole = pending - pending % 3;
+            sink.write(out, 0, encode(whole));
+            for (int i = whole; i < pending; i++)
+                in[i - whole] = in[i];
+            pending -= whole;
+        }
+    }
+
+    /**
+     * Encode remaining bytes with padding, underlying sink stays open
+     */
+    public void finish() throws IOException {
+        int whole = pending - pending % 3;
+        int length = encode(whole);
+        if (pending - whole == 1) {
+            int b0 = in[whole] & 0xff;
+            out[length++] = MAP[b0 >> 2];
+            out[length++] = MAP[(b0 & 0x03) << 4];
+            out[length++] = '=';
+            out[length++] = '=';
+        } else if (pending - whole == 2) {
+            int b0 = in[whole] & 0xff;
+            int b1 = in[whole + 1] & 0xff;
+            out[length++] = MAP[b0 >> 2];
+            out[length++] = MAP[(b0 & 0x03) << 4 | b1 >> 4];
+            out[length++] = MAP[(b1 & 0x0f) << 2];
+            out[length++] = '=';
+        }
+        sink.write(out, 0, length);
+        pending = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        sink.flush();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return sink.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        sink.close();
+    }
+
+    /**
+     * Encode first count bytes of input, count must be a multiple of 3
+     *
+     * @return number of encoded bytes
+     */
+    private int encode(int count) {
+        int length = 0;
+        for (int i = 0; i < count; i += 3) {
+            int b0 = in[i] & 0xff;
+            int b1 = in[i + 1] & 0xff;
+            int b2 = in[i + 2] & 0xff;
+            out[length++] = MAP[b0 >> 2];
+            out[length++] = MAP[(b0 & 0x03) << 4 | b1 >> 4];
+            out[length++] = MAP[(b1 & 0x0f) << 2 | b2 >> 6];
+            out[length++] = MAP[b2 & 0x3f];
+        }
+        return length;
+    }
+}
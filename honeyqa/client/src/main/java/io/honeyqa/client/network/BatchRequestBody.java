@@ -0,0 +1,47 @@
+package io.honeyqa.client.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okhttp.HQ_MediaType;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Okio;
+import io.honeyqa.client.network.okio.Source;
+
+/**
+ * Request body of stored records sent as one JSON array. Records are copied from
+ * their files while the body is written, they are never loaded as Strings.
+ */
+public class BatchRequestBody extends HQ_RequestBody {
+
+    private final List<File> records;
+
+    public BatchRequestBody(List<File> records) {
+        this.records = records;
+    }
+
+    @Override
+    public HQ_MediaType contentType() {
+        return Network.JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        JSONStreamWriter writer = new JSONStreamWriter(sink);
+        writer.beginArray();
+        for (File record : records) {
+            Source source = null;
+            try {
+                source = Okio.source(record);
+                writer.rawValue(source);
+            } finally {
+                HQ_Util.closeQuietly(source);
+            }
+        }
+        writer.endArray();
+    }
+}
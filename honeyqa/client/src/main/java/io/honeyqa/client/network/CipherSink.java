@@ -0,0 +1,86 @@
+package io.honeyqa.client.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Sink;
+import io.honeyqa.client.network.okio.Timeout;
+
+/**
+ * Sink which passes everything written to it through an initialized Cipher.
+ * Input is processed in fixed size chunks into a reused output buffer.
+ */
+public final class CipherSink implements Sink {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Cipher cipher;
+    private final BufferedSink sink;
+    private final byte[] in = new byte[CHUNK_SIZE];
+    private final byte[] out;
+    private long bytesWritten = 0;
+
+    /**
+     * @param cipher initialized cipher, owned by this sink until {@link #finish()}
+     */
+    public CipherSink(Cipher cipher, BufferedSink sink) {
+        this.cipher = cipher;
+        this.sink = sink;
+        out = new byte[cipher.getOutputSize(CHUNK_SIZE) + cipher.getBlockSize()];
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+        while (byteCount > 0) {
+            int read = source.read(in, 0, (int) Math.min(byteCount, CHUNK_SIZE));
+            if (read == -1)
+                throw new EOFException();
+            byteCount -= read;
+            bytesWritten += read;
+            try {
+                sink.write(out, 0, cipher.update(in, 0, read, out, 0));
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Write final block, underlying sink stays open
+     */
+    public void finish() throws IOException {
+        try {
+            sink.write(out, 0, cipher.doFinal(out, 0));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    /**
+     * @return number of plain bytes written to this sink
+     */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        sink.flush();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return sink.timeout();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        sink.close();
+    }
+}
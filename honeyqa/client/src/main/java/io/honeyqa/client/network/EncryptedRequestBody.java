@@ -0,0 +1,42 @@
+package io.honeyqa.client.network;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import io.honeyqa.client.auth.Encryptor;
+import io.honeyqa.client.network.okhttp.HQ_MediaType;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.BufferedSink;
+
+/**
+ * Encrypts wrapped body while it is written and sends it in the JSON envelope of
+ * {@link Encryptor#writeEnvelope}. Nothing is encrypted before the request is sent.
+ */
+public class EncryptedRequestBody extends HQ_RequestBody {
+
+    /**
+     * HoneyQA-Encrypt-Opt of this transform, prefixed with "gzip+" when wrapped body is
+     * a {@link GzipRequestBody}
+     */
+    public static final String PIPELINE = "aes-256-cbc-pkcs5padding+base64";
+
+    private final HQ_RequestBody body;
+
+    public EncryptedRequestBody(HQ_RequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public HQ_MediaType contentType() {
+        return Network.JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try {
+            Encryptor.writeEnvelope(sink, body);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.toString());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.honeyqa.client.network;
+
+import java.io.IOException;
+
+import io.honeyqa.client.network.okhttp.HQ_MediaType;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.ForwardingSink;
+import io.honeyqa.client.network.okio.GzipSink;
+import io.honeyqa.client.network.okio.Okio;
+import io.honeyqa.client.network.okio.Sink;
+
+/**
+ * Compresses wrapped body while it is written, sent with Content-Encoding: gzip or
+ * inside an {@link EncryptedRequestBody}. The sink written to stays open.
+ * Sizes before and after compression are added to {@link NetworkStats}.
+ */
+public class GzipRequestBody extends HQ_RequestBody {
+
+    private final HQ_RequestBody body;
+
+    public GzipRequestBody(HQ_RequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public HQ_MediaType contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink compressed = new CountingSink(sink, false);
+        CountingSink uncompressed = new CountingSink(new GzipSink(compressed), true);
+        BufferedSink gzipSink = Okio.buffer(uncompressed);
+        body.writeTo(gzipSink);
+        gzipSink.close();
+        NetworkStats.recordCompression(uncompressed.count, compressed.count);
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        private final boolean closeDelegate;
+        long count = 0;
+
+        CountingSink(Sink delegate, boolean closeDelegate) {
+            super(delegate);
+            this.closeDelegate = closeDelegate;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeDelegate)
+                super.close();
+            else
+                flush();
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            count += byteCount;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.honeyqa.client.network;
+
+import java.io.IOException;
+
+import io.honeyqa.client.json.JSONInterface;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okhttp.HQ_MediaType;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.BufferedSink;
+
+/**
+ * Request body streaming a JSONInterface while the request is sent
+ */
+public class JSONRequestBody extends HQ_RequestBody {
+
+    private final JSONInterface data;
+
+    public JSONRequestBody(JSONInterface data) {
+        this.data = data;
+    }
+
+    @Override
+    public HQ_MediaType contentType() {
+        return Network.JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        data.writeJSON(new JSONStreamWriter(sink));
+    }
+}
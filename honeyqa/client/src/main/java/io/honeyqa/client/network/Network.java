@@ -1,6 +1,7 @@
 package io.honeyqa.client.network;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.util.Arrays;
 
 
 import android.os.Handler;
@@ -10,12 +11,11 @@ import android.util.Log;
 import io.honeyqa.client.auth.Encryptor;
 import io.honeyqa.client.data.HoneyQAData;
 import io.honeyqa.client.network.okhttp.HQ_MediaType;
-import io.honeyqa.client.network.okhttp.HQ_OkHttpClient;
 import io.honeyqa.client.network.okhttp.HQ_Request;
 import io.honeyqa.client.network.okhttp.HQ_RequestBody;
 import io.honeyqa.client.network.okhttp.HQ_Response;
 
-public class Network extends Thread {
+public class Network implements Runnable {
 
     /**
      * HTTP Method
@@ -33,9 +33,13 @@ public class Network extends Thread {
 
     // Variables for communicate with server
     private boolean isEncrypt;
+    private boolean isCompress = HoneyQAData.isCompress;
     private Method method;
     private String data, url;
+    private HQ_RequestBody body;
     private Handler handler;
+    private boolean readResponse;
+    private String responseBody;
 
     /**
      * Check options (url / data / method)
@@ -43,7 +47,7 @@ public class Network extends Thread {
      * @throws IllegalStateException when url / data / method not set
      */
     private void checkAssert() {
-        if (url == null || data == null || method == null)
+        if (url == null || (data == null && body == null) || method == null)
             throw new IllegalStateException("you might miss setNetworkOption method");
     }
 
@@ -62,73 +66,155 @@ public class Network extends Thread {
         this.isEncrypt = isEncrypt;
     }
 
+    /**
+     * Set network options with streamed body
+     *
+     * @param url       API Server URL
+     * @param body      body written while request is sent
+     * @param method
+     * @param isEncrypt
+     */
+    public void setNetworkOption(String url, HQ_RequestBody body, Method method, boolean isEncrypt) {
+        this.url = url;
+        this.body = body;
+        this.method = method;
+        this.isEncrypt = isEncrypt;
+    }
+
+    /**
+     * Compress request body with gzip while it is sent, defaults to {@link HoneyQAData#isCompress}
+     */
+    public void setCompress(boolean isCompress) {
+        this.isCompress = isCompress;
+    }
+
     public void setHandler(Handler handler) {
         this.handler = handler;
     }
 
+    /**
+     * Keep response body for {@link #getResponseBody()}, for requests executed on a
+     * worker thread without Looper
+     */
+    public void setReadResponse(boolean readResponse) {
+        this.readResponse = readResponse;
+    }
+
+    /**
+     * @return response body of last execution, null unless {@link #setReadResponse} is set
+     */
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * @return true when request must be sent encrypted
+     */
+    public boolean isEncrypt() {
+        return isEncrypt;
+    }
+
+    /**
+     * @return key identifying request payload, used to coalesce identical requests
+     */
+    public Object getKey() {
+        return Arrays.asList(method, url, data != null ? data : body);
+    }
+
     @Override
     public void run() {
+        execute();
+    }
+
+    /**
+     * Send request on the calling thread
+     *
+     * @return HTTP status code, -1 when request failed
+     */
+    public int execute() {
         switch (method) {
             case GET:
-                requestGet();
-                break;
+                return requestGet();
             case POST:
-                requestPost();
-                break;
+                return requestPost();
         }
+        return -1;
     }
 
-    private void requestGet() {
+    private int requestGet() {
         try {
             checkAssert();
-            HQ_OkHttpClient client = new HQ_OkHttpClient();
-            setTimeout(client);
             HQ_Request request = new HQ_Request.Builder()
                     .url(url)
                     .build();
-            HQ_Response response = client.newCall(request).execute();
-            if (handler != null) {
-                Message msg = new Message();
-                msg.obj = response.body().string();
-                handler.sendMessage(msg);
-            }
+            HQ_Response response = NetworkClient.get().newCall(request).execute();
+            handleResponse(response);
+            return response.code();
         } catch (Exception e) {
             e.printStackTrace();
+            return -1;
         }
     }
 
-    private void requestPost() {
+    private int requestPost() {
         try {
             checkAssert();
-            HQ_OkHttpClient client = new HQ_OkHttpClient();
-            setTimeout(client);
-            HQ_RequestBody body = HQ_RequestBody.create(JSON, data);
+            HQ_RequestBody body = this.body != null ? this.body : HQ_RequestBody.create(JSON, data);
             HQ_Request.Builder r = new HQ_Request.Builder()
                     .header("Content-Type", "application/json; charset=utf-8")
                     .addHeader("version", "1.0.0")
-                    .url(url)
-                    .post(body);
-            if (isEncrypt && Encryptor.baseKey != null && Encryptor.token != null) {
-                r.addHeader("HoneyQA-Encrypt-Opt", "aes-256-cbc-pkcs5padding+base64");
-                data = Encryptor.encrypt(data);
-                Log.e(HoneyQAData.HONEYQA_SDK_LOG, data);
+                    .url(url);
+            // transforms run while body is written: compress -> encrypt -> encode
+            boolean compress = isCompress && shouldCompress(body);
+            if (isEncrypt && !Encryptor.hasToken()) {
+                // never fall back to plaintext, caller keeps the payload for later
+                Log.e(HoneyQAData.HONEYQA_SDK_LOG, "encryption key not ready, request not sent");
+                return -1;
             }
-            HQ_Response response = client.newCall(r.build()).execute();
-            if (handler != null) {
-                Message msg = new Message();
-                msg.obj = response.body().string();
-                handler.sendMessage(msg);
+            if (isEncrypt) {
+                if (compress)
+                    body = new GzipRequestBody(body);
+                body = new EncryptedRequestBody(body);
+                r.addHeader("HoneyQA-Encrypt-Opt", compress
+                        ? "gzip+" + EncryptedRequestBody.PIPELINE : EncryptedRequestBody.PIPELINE);
+            } else if (compress) {
+                body = new GzipRequestBody(body);
+                r.addHeader("Content-Encoding", "gzip");
             }
+            r.post(body);
+            HQ_Response response = NetworkClient.get().newCall(r.build()).execute();
+            handleResponse(response);
             int statusCode = response.code();
             Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("HoneyQA HQ_Response Code : %d", statusCode));
+            return statusCode;
         } catch (Exception e) {
             e.printStackTrace();
+            return -1;
         }
     }
 
-    private void setTimeout(HQ_OkHttpClient client) {
-        client.setConnectTimeout(5, TimeUnit.SECONDS);
-        client.setReadTimeout(5, TimeUnit.SECONDS);
+    /**
+     * @return true when body is unknown length or at least {@link HoneyQAData#CompressThreshold} bytes
+     */
+    private static boolean shouldCompress(HQ_RequestBody body) throws IOException {
+        long length = body.contentLength();
+        return length == -1 || length >= HoneyQAData.CompressThreshold;
+    }
+
+    /**
+     * Deliver response body to handler, body is always consumed so the
+     * connection goes back to the pool
+     */
+    private void handleResponse(HQ_Response response) throws IOException {
+        if (handler != null) {
+            Message msg = new Message();
+            msg.obj = response.body().string();
+            handler.sendMessage(msg);
+        } else if (readResponse) {
+            responseBody = response.body().string();
+        } else {
+            response.body().close();
+        }
     }
 
 }
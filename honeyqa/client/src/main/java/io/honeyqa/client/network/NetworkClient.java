@@ -0,0 +1,70 @@
+package io.honeyqa.client.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.honeyqa.client.network.okhttp.HQ_Connection;
+import io.honeyqa.client.network.okhttp.HQ_ConnectionPool;
+import io.honeyqa.client.network.okhttp.HQ_ConnectionSpec;
+import io.honeyqa.client.network.okhttp.HQ_Interceptor;
+import io.honeyqa.client.network.okhttp.HQ_OkHttpClient;
+import io.honeyqa.client.network.okhttp.HQ_Protocol;
+import io.honeyqa.client.network.okhttp.HQ_Response;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
+
+/**
+ * Holds the single HQ_OkHttpClient used for every endpoint in {@link NetworkResource}.
+ * <p/>
+ * All SDK traffic goes to one host, so one small connection pool is enough. HTTP/2 is
+ * offered first and used when the platform supports ALPN, otherwise the client falls
+ * back to HTTP/1.1 keep-alive connections.
+ */
+public class NetworkClient {
+
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    private static final HQ_OkHttpClient client = createClient();
+
+    /**
+     * Connections which already carried a request
+     */
+    private static final Set<HQ_Connection> usedConnections =
+            Collections.newSetFromMap(new WeakHashMap<HQ_Connection, Boolean>());
+
+    /**
+     * @return shared client
+     */
+    public static HQ_OkHttpClient get() {
+        return client;
+    }
+
+    private static HQ_OkHttpClient createClient() {
+        HQ_OkHttpClient client = new HQ_OkHttpClient();
+        client.setConnectTimeout(5, TimeUnit.SECONDS);
+        client.setReadTimeout(5, TimeUnit.SECONDS);
+        client.setWriteTimeout(10, TimeUnit.SECONDS);
+        client.setConnectionPool(new HQ_ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        client.setConnectionSpecs(HQ_Util.immutableList(
+                HQ_ConnectionSpec.MODERN_TLS, HQ_ConnectionSpec.COMPATIBLE_TLS));
+        client.setProtocols(HQ_Util.immutableList(HQ_Protocol.HTTP_2, HQ_Protocol.HTTP_1_1));
+        client.networkInterceptors().add(new HQ_Interceptor() {
+            @Override
+            public HQ_Response intercept(Chain chain) throws IOException {
+                HQ_Connection connection = chain.connection();
+                boolean reused;
+                synchronized (usedConnections) {
+                    reused = !usedConnections.add(connection);
+                }
+                HQ_Protocol protocol = connection.getProtocol();
+                NetworkStats.recordRequest(reused,
+                        protocol == HQ_Protocol.HTTP_2 || protocol == HQ_Protocol.SPDY_3);
+                return chain.proceed(chain.request());
+            }
+        });
+        return client;
+    }
+}
@@ -8,6 +8,9 @@ public class NetworkResource {
     public static final String EXCEPTION_URL = SERVER_URL + "/api/v2/client/exception";
     public static final String NATIVE_EXCEPTION_URL = SERVER_URL
             + "/api/v2/client/exception/native";
+    public static final String OCCURRENCE_URL = SERVER_URL
+            + "/api/v2/client/exception/occurrence";
     public static final String SESSION_URL = SERVER_URL + "/api/v2/client/session";
+    public static final String SESSION_BATCH_URL = SESSION_URL + "/batch";
     public static final String REQUEST_KEY_URL = SERVER_URL + "/api/v2/client/key";
 }
@@ -0,0 +1,80 @@
+package io.honeyqa.client.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of SDK network traffic
+ */
+public class NetworkStats {
+
+    private static final AtomicLong requestCount = new AtomicLong();
+    private static final AtomicLong reusedConnectionCount = new AtomicLong();
+    private static final AtomicLong multiplexedRequestCount = new AtomicLong();
+    private static final AtomicLong uncompressedBytes = new AtomicLong();
+    private static final AtomicLong compressedBytes = new AtomicLong();
+
+    static void recordRequest(boolean reusedConnection, boolean multiplexed) {
+        requestCount.incrementAndGet();
+        if (reusedConnection)
+            reusedConnectionCount.incrementAndGet();
+        if (multiplexed)
+            multiplexedRequestCount.incrementAndGet();
+    }
+
+    static void recordCompression(long uncompressed, long compressed) {
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(compressed);
+    }
+
+    /**
+     * @return number of requests sent over the network
+     */
+    public static long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of requests sent on an already opened connection
+     */
+    public static long getReusedConnectionCount() {
+        return reusedConnectionCount.get();
+    }
+
+    /**
+     * @return number of requests sent on a HTTP/2 or SPDY connection
+     */
+    public static long getMultiplexedRequestCount() {
+        return multiplexedRequestCount.get();
+    }
+
+    /**
+     * @return ratio of requests which skipped DNS + TCP + TLS, 0 when nothing was sent
+     */
+    public static float getConnectionReuseRate() {
+        long requests = requestCount.get();
+        if (requests == 0)
+            return 0;
+        return (float) reusedConnectionCount.get() / requests;
+    }
+
+    /**
+     * @return body bytes of gzip uploads before compression
+     */
+    public static long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return body bytes of gzip uploads actually sent
+     */
+    public static long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return bytes saved by gzip compression
+     */
+    public static long getCompressionSavedBytes() {
+        return uncompressedBytes.get() - compressedBytes.get();
+    }
+}
@@ -0,0 +1,39 @@
+package io.honeyqa.client.network;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.honeyqa.client.network.okhttp.HQ_MediaType;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okhttp.internal.HQ_Util;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Okio;
+import io.honeyqa.client.network.okio.Source;
+
+/**
+ * Request body of one stored record, copied from its file while the body is written
+ */
+public class RecordRequestBody extends HQ_RequestBody {
+
+    private final File record;
+
+    public RecordRequestBody(File record) {
+        this.record = record;
+    }
+
+    @Override
+    public HQ_MediaType contentType() {
+        return Network.JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        Source source = null;
+        try {
+            source = Okio.source(record);
+            sink.writeAll(source);
+        } finally {
+            HQ_Util.closeQuietly(source);
+        }
+    }
+}
@@ -1,125 +1,256 @@
 package io.honeyqa.client.network;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.util.List;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Handler;
-import android.os.Message;
-import android.util.Base64;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
+import io.honeyqa.client.collector.DateCollector;
+import io.honeyqa.client.collector.DeviceProfile;
+import io.honeyqa.client.collector.DeviceStateTracker;
 import io.honeyqa.client.collector.ErrorReport;
+import io.honeyqa.client.collector.ErrorReportFactory;
+import io.honeyqa.client.collector.OccurrenceCounter;
+import io.honeyqa.client.json.JSONFrameProfile;
+import io.honeyqa.client.json.JSONOccurrence;
 import io.honeyqa.client.auth.Authentication;
 import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.eventpath.EventPathManager;
 import io.honeyqa.client.network.Network;
+import io.honeyqa.client.store.ReportStore;
 
 public class Sender {
 
-    public static void sendSession(Authentication auth, String url) {
-        Network network = new Network();
-        network.setNetworkOption(url, auth.toJSONObject().toString(), Network.Method.POST,
-                HoneyQAData.isEncrypt);
-        network.start();
+    private static final String SESSIONS = "honeyqa_sessions";
+    private static final String LAST_SESSION_UPLOAD = "last_upload";
+    /**
+     * Launches whose startup cost is kept in one daily session record
+     */
+    private static final int MAX_STARTUPS = 24;
+    private static final Object sessionLock = new Object();
+
+    /**
+     * Record session and upload pending sessions when they are due
+     */
+    public static void sendSession(Context context, Authentication auth) {
+        saveSession(context, auth);
+        flushSessions(context, false);
     }
 
-    public static void sendException(ErrorReport report, String url)
-            throws JSONException {
-        Handler handler = new Handler() {
-            public void handleMessage(Message msg) {
-                String response = (String) msg.obj;
-                Log.e(HoneyQAData.HONEYQA_SDK_LOG, response);
-            }
-        };
+    /**
+     * Add session to the daily record of its device, sessions of one UTC day are kept as
+     * one record with a count until it is uploaded. Frame profiles of the day are added
+     * up and startup costs are kept per launch, at most {@link #MAX_STARTUPS}. A session
+     * after the upload starts a new record, the server adds up counts of the same day.
+     *
+     * @return daily record, null when session is not persisted
+     */
+    public static File saveSession(Context context, Authentication auth) {
+        if (context == null)
+            return null;
+        // not Sender.class, the crash path saves occurrences under that monitor
+        synchronized (sessionLock) {
+            String date = DateCollector.GetDateYYMMDDHHMMSS(System.currentTimeMillis()).substring(0, 10);
+            String key = date + "|" + auth.getKey() + "|" + auth.getDevieId();
+            SharedPreferences prefs = context.getSharedPreferences(SESSIONS, Context.MODE_PRIVATE);
+            String path = prefs.getString(key, null);
+            auth.setDate(date);
 
-        Network network = new Network();
-        network.setNetworkOption(url, makeJsonStr(report), Network.Method.POST, HoneyQAData.isEncrypt);
-        Log.e(HoneyQAData.HONEYQA_SDK_LOG, makeJsonStr(report));
-        network.setHandler(handler);
-        network.start();
-    }
+            File record = path != null ? new File(path) : null;
+            JSONObject previous = ReportStore.read(record);
+            if (previous != null) {
+                JSONObject profile = auth.getProfile();
+                JSONArray startups = auth.getStartups();
+                auth.setCount(previous.optInt("count") + 1);
+                auth.setProfile(JSONFrameProfile.merge(previous.optJSONObject("profile"), profile));
+                auth.addEarlierStartups(previous.optJSONArray("startups"), MAX_STARTUPS);
+                if (ReportStore.replace(record, auth)) {
+                    Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("session %d of %s saved",
+                            auth.getCount(), date));
+                    return record;
+                }
+                // record went out meanwhile, this launch starts a new one
+                auth.setProfile(profile);
+                auth.setStartups(startups);
+            }
 
-    public static void sendExceptionWithNative(ErrorReport report, String url,
-                                               String fileName) {
-        try {
-            Network network = new Network();
-            // # step 1 : init for reading
-            FileInputStream fis = new FileInputStream(fileName);
-            File dmp_file = new File(fileName);
-            byte[] byteArr = new byte[(int) dmp_file.length()];
-
-            // # step 2 : read file from image
-            fis.read(byteArr);
-            fis.close();
-
-            // # step 3 : image to String using Base64
-            report.NativeData = Base64.encodeToString(byteArr, Base64.NO_WRAP);
-
-            // # step 4 : send data
-            dmp_file.delete();
-            network.setNetworkOption(url, makeJsonStrForNative(report),
-                    Network.Method.POST, HoneyQAData.isEncrypt);
-            network.start();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (JSONException e) {
-            e.printStackTrace();
+            auth.setCount(1);
+            record = ReportStore.append(context, ReportStore.SESSION, auth);
+            if (record == null)
+                return null;
+            SharedPreferences.Editor editor = prefs.edit();
+            for (String indexed : prefs.getAll().keySet()) {
+                if (!indexed.equals(LAST_SESSION_UPLOAD))
+                    editor.remove(indexed);
+            }
+            editor.putString(key, record.getPath()).apply();
+            Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("session 1 of %s saved", date));
+            return record;
         }
     }
 
     /**
-     * create json string for non-native application
+     * Upload pending session records in batches while network is available, at most once
+     * per {@link HoneyQAData#SessionUploadInterval} unless forced
      *
-     * @return String includes console_log, exception, instance, version
+     * @param force upload regardless of the interval, e.g. when other reports go out
      */
-    private static String makeJsonStr(ErrorReport data) throws JSONException {
-        JSONObject object = new JSONObject();
-        object.put("console_log", getLog(data));
-        object.put("exception", data.ErrorData.toJSONObject());
-        object.put("instance", getId(data));
-        object.put("version", data.mHoneyQAVersion);
-        return object.toString();
+    public static void flushSessions(final Context context, final boolean force) {
+        UploadScheduler.schedule(ReportStore.SESSION, new Runnable() {
+            @Override
+            public void run() {
+                drainSessions(context, force);
+            }
+        }, HoneyQAData.isEncrypt);
+    }
+
+    private static void drainSessions(Context context, boolean force) {
+        if (context == null || !DeviceStateTracker.isConnected(context))
+            return;
+        SharedPreferences prefs = context.getSharedPreferences(SESSIONS, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long lastUpload = prefs.getLong(LAST_SESSION_UPLOAD, 0);
+        if (!force && now >= lastUpload && now - lastUpload < HoneyQAData.SessionUploadInterval)
+            return;
+        if (ReportStore.isEmpty(context, ReportStore.SESSION))
+            return;
+        if (drain(context, ReportStore.SESSION, NetworkResource.SESSION_BATCH_URL))
+            prefs.edit().putLong(LAST_SESSION_UPLOAD, now).apply();
     }
 
     /**
-     * create json string for native application
-     *
-     * @return String includes console_log, exception, instance, version, dump_data
+     * Queue exception report and upload pending reports in background
      */
-    private static String makeJsonStrForNative(ErrorReport data)
+    public static void sendException(ErrorReport report, String url)
             throws JSONException {
-        JSONObject object = new JSONObject();
-        object.put("console_log", getLog(data));
-        object.put("exception", data.ErrorData.toJSONObject());
-        object.put("instance", getId(data));
-        object.put("version", data.mHoneyQAVersion);
-        object.put("dump_data", data.NativeData);
-        return object.toString();
+        saveException(report);
+        flushExceptions(HoneyQAData.APP_CONTEXT, url);
+    }
+
+    /**
+     * Persist exception report on the calling thread, without network I/O.
+     * Used from crash path, the report is uploaded on next flush.
+     *
+     * @return stored record, null when report is not persisted
+     */
+    public static File saveException(ErrorReport report) {
+        File record = ReportStore.append(HoneyQAData.APP_CONTEXT, ReportStore.EXCEPTION, report);
+        Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("exception report %d saved : %b",
+                report.mId, record != null));
+        return record;
     }
 
     /**
-     * extract logdata from ErrorReport
+     * Overwrite record saved by {@link #saveException} with an enriched report
      *
-     * @return JSONObject LogData
+     * @return true when record is replaced
      */
-    private static JSONObject getLog(ErrorReport data) throws JSONException {
-        JSONObject map = new JSONObject();
-        map.put("data", data.LogData);
-        return map;
+    public static boolean updateException(File record, ErrorReport report) {
+        return ReportStore.replace(record, report);
     }
 
     /**
-     * extract id from ErrorReport
+     * Count a compact occurrence instead of saving report when same crash fingerprint
+     * was reported within {@link HoneyQAData#DedupWindow}. Repeats of a window are added
+     * to one record until it is uploaded, then a new record counts the following ones.
      *
-     * @return JSONObject id
+     * @param sync persist counter before returning, for the crash path
+     * @return true when report was a repeat, full report must not be sent then
+     */
+    public static synchronized boolean saveOccurrence(Context context, ErrorReport report,
+                                                      boolean sync) {
+        String fingerprint = report.ErrorData.fingerprint;
+        int total = OccurrenceCounter.record(context, fingerprint, sync);
+        if (total <= 1)
+            return false;
+        File record = OccurrenceCounter.getRecord(context, fingerprint);
+        JSONObject previous = ReportStore.read(record);
+        int count = previous != null ? previous.optInt("count") + 1 : 1;
+        // crash path must not compute the profile
+        DeviceProfile profile = sync ? DeviceProfile.getCached() : DeviceProfile.get(context);
+        JSONOccurrence occurrence = ErrorReportFactory.createOccurrence(report, count, profile);
+        if (previous == null || !ReportStore.replace(record, occurrence)) {
+            occurrence.count = 1;
+            record = ReportStore.append(context, ReportStore.OCCURRENCE, occurrence);
+            if (record != null)
+                OccurrenceCounter.setRecord(context, fingerprint, record, sync);
+        }
+        Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("exception %s repeated %d times, saved : %b",
+                fingerprint, total, record != null));
+        return true;
+    }
+
+    /**
+     * Upload pending exception reports, then native crash reports one by one, then
+     * occurrences of repeated ones, in batches of {@link HoneyQAData#ReportBatchSize}.
+     * Pending sessions go out on the same connection.
      */
-    private static JSONObject getId(ErrorReport data) throws JSONException {
-        JSONObject map = new JSONObject();
-        map.put("id", data.mId);
-        return map;
+    public static void flushExceptions(final Context context, final String url) {
+        UploadScheduler.schedule(ReportStore.EXCEPTION, new Runnable() {
+            @Override
+            public void run() {
+                if (drain(context, ReportStore.EXCEPTION, url)
+                        && drain(context, ReportStore.NATIVE, NetworkResource.NATIVE_EXCEPTION_URL)
+                        && drain(context, ReportStore.OCCURRENCE, NetworkResource.OCCURRENCE_URL))
+                    drainSessions(context, true);
+            }
+        }, HoneyQAData.isEncrypt);
+    }
+
+    /**
+     * @return true when queue is empty
+     */
+    private static boolean drain(Context context, String queue, String url) {
+        int dropped = ReportStore.trim(context, queue, HoneyQAData.MaxStoredReports);
+        if (dropped > 0)
+            Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("%d stored reports dropped", dropped));
+        while (true) {
+            // native endpoint takes a single report, not an array
+            boolean single = ReportStore.NATIVE.equals(queue);
+            List<File> records = ReportStore.peek(context, queue,
+                    single ? 1 : HoneyQAData.ReportBatchSize);
+            if (records.isEmpty())
+                return true;
+            Network network = new Network();
+            network.setNetworkOption(url, single ? new RecordRequestBody(records.get(0))
+                    : new BatchRequestBody(records), Network.Method.POST, HoneyQAData.isEncrypt);
+            boolean sent = false;
+            try {
+                int statusCode = network.execute();
+                sent = statusCode >= 200 && statusCode < 300;
+            } finally {
+                if (sent)
+                    ReportStore.remove(records);
+                else
+                    ReportStore.release(records);
+            }
+            if (!sent)
+                return false;
+        }
+    }
+
+    /**
+     * Queue native crash report and upload it in background. The dump file is Base64
+     * encoded into the stored record and deleted once the record is on disk; the record
+     * is removed only after the server accepted it.
+     */
+    public static void sendExceptionWithNative(ErrorReport report, String url,
+                                               String fileName) {
+        File dmpFile = new File(fileName);
+        report.NativeDump = dmpFile;
+        File record = ReportStore.append(HoneyQAData.APP_CONTEXT, ReportStore.NATIVE, report);
+        Log.e(HoneyQAData.HONEYQA_SDK_LOG, String.format("native report %d saved : %b",
+                report.mId, record != null));
+        if (record != null)
+            dmpFile.delete();
+        EventPathManager.flushSpill();
+        flushExceptions(HoneyQAData.APP_CONTEXT, NetworkResource.EXCEPTION_URL);
     }
 
 }
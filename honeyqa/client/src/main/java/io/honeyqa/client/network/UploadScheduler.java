@@ -0,0 +1,156 @@
+package io.honeyqa.client.network;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.honeyqa.client.auth.Encryptor;
+import io.honeyqa.client.data.HoneyQAData;
+
+/**
+ * Single worker upload queue shared by all SDK requests.
+ * <p/>
+ * Tasks run one at a time on one background thread, so the number of threads stays
+ * constant no matter how many reports are sent. The queue is bounded by
+ * {@link HoneyQAData#MaxPendingUploads}; when it is full the oldest pending request
+ * payload ({@link Network}) is dropped. Other tasks, e.g. initialization, key exchange or
+ * draining of the report store, are never dropped, they are keyed and so bounded by
+ * coalescing. Tasks scheduled with a key that is already pending are coalesced.
+ * Encrypted uploads are held in a second queue until the encryption key is ready.
+ */
+public class UploadScheduler {
+
+    private static final LinkedHashMap<Object, Runnable> pending = new LinkedHashMap<Object, Runnable>();
+    private static final LinkedHashMap<Object, Runnable> waitingForKey = new LinkedHashMap<Object, Runnable>();
+    private static Thread worker;
+    private static int droppedCount = 0;
+    private static int coalescedCount = 0;
+
+    /**
+     * Schedule task on upload worker
+     *
+     * @param key  coalescing key, identical pending keys run once
+     * @param task task to run
+     * @return false when task was coalesced with a pending one
+     */
+    public static synchronized boolean schedule(Object key, Runnable task) {
+        if (pending.containsKey(key)) {
+            coalescedCount++;
+            return false;
+        }
+        put(pending, key, task);
+        if (worker == null) {
+            worker = new Thread(new Worker(), "HoneyQA-Upload");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        UploadScheduler.class.notify();
+        return true;
+    }
+
+    /**
+     * Schedule task, held back until encryption key is ready when encrypted is set.
+     * Every held back task starts a key exchange unless one is running or a failed one
+     * is backing off, so an exchange which failed is retried by a later upload.
+     */
+    public static boolean schedule(Object key, Runnable task, boolean encrypted) {
+        if (!encrypted)
+            return schedule(key, task);
+        boolean scheduled;
+        synchronized (UploadScheduler.class) {
+            if (Encryptor.hasToken())
+                return schedule(key, task);
+            scheduled = !waitingForKey.containsKey(key);
+            if (scheduled)
+                put(waitingForKey, key, task);
+            else
+                coalescedCount++;
+        }
+        // outside of lock, key exchange schedules itself
+        if (HoneyQAData.APP_CONTEXT != null)
+            Encryptor.requestToken(HoneyQAData.APP_CONTEXT);
+        return scheduled;
+    }
+
+    /**
+     * Schedule network request, identical requests are coalesced.
+     * Encrypted requests wait for the encryption key.
+     */
+    public static boolean schedule(Network network) {
+        return schedule(network.getKey(), network, network.isEncrypt());
+    }
+
+    /**
+     * Queue tasks held back for encryption key, called when key exchange completed
+     */
+    public static synchronized void releaseWaitingForKey() {
+        for (Map.Entry<Object, Runnable> entry : waitingForKey.entrySet())
+            schedule(entry.getKey(), entry.getValue());
+        waitingForKey.clear();
+    }
+
+    /**
+     * Add task to queue, dropping the oldest request payload when queue is full
+     */
+    private static void put(LinkedHashMap<Object, Runnable> queue, Object key, Runnable task) {
+        if (queue.size() >= HoneyQAData.MaxPendingUploads) {
+            Iterator<Map.Entry<Object, Runnable>> entries = queue.entrySet().iterator();
+            while (entries.hasNext()) {
+                if (entries.next().getValue() instanceof Network) {
+                    entries.remove();
+                    droppedCount++;
+                    Log.e(HoneyQAData.HONEYQA_SDK_LOG, "upload queue full, dropped oldest request");
+                    break;
+                }
+            }
+        }
+        queue.put(key, task);
+    }
+
+    /**
+     * @return number of tasks dropped because queue was full
+     */
+    public static synchronized int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return number of tasks merged into a pending identical task
+     */
+    public static synchronized int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    private static synchronized Runnable take() throws InterruptedException {
+        while (pending.isEmpty())
+            UploadScheduler.class.wait();
+        Iterator<Map.Entry<Object, Runnable>> next = pending.entrySet().iterator();
+        Runnable task = next.next().getValue();
+        next.remove();
+        return task;
+    }
+
+    private static class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = take();
+                } catch (InterruptedException e) {
+                    synchronized (UploadScheduler.class) {
+                        worker = null;
+                    }
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+}
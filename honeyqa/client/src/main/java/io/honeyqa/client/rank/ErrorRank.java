@@ -7,6 +7,7 @@ public enum ErrorRank {
     Critical(2), // Critical error
     Major(3), // Major error
     Minor(4), // Minor error
+    ANR(5), // Main thread not responding
     ;
 
     private final int value;
@@ -0,0 +1,255 @@
+package io.honeyqa.client.store;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.honeyqa.client.data.HoneyQAData;
+import io.honeyqa.client.json.JSONInterface;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.BufferedSource;
+import io.honeyqa.client.network.okio.Okio;
+
+/**
+ * Durable append-only report queue under the app cache directory.
+ * <p/>
+ * Every record is written to its own file (temp file + rename), so a record is either
+ * fully on disk or not there at all, even when the process is killed while writing.
+ * Records are named by creation time, which keeps the queue in FIFO order.
+ * <p/>
+ * Records returned by {@link #peek} are checked out until they are removed or released,
+ * a checked out record is not replaced, so an upload never loses or repeats an update.
+ * Temp files of a killed writer are deleted when a queue is first used.
+ */
+public class ReportStore {
+
+    /**
+     * Queue for java exception reports
+     */
+    public static final String EXCEPTION = "exception";
+    /**
+     * Queue for native crash reports, the dump is embedded in the record
+     */
+    public static final String NATIVE = "native";
+    /**
+     * Queue for repeated crash occurrences
+     */
+    public static final String OCCURRENCE = "occurrence";
+    /**
+     * Queue for daily session records
+     */
+    public static final String SESSION = "session";
+
+    private static final String STORE_DIR = "honeyqa";
+    private static final String RECORD_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final Set<File> checkedOut = new HashSet<File>();
+    private static final Set<String> cleanedQueues = new HashSet<String>();
+
+    /**
+     * Append record to queue on the calling thread
+     *
+     * @param context application context
+     * @param queue   queue name
+     * @param record  report, streamed to disk without intermediate String
+     * @return record file, null when record is not persisted
+     */
+    public static File append(Context context, String queue, JSONInterface record) {
+        File dir = getQueueDir(context, queue);
+        if (dir == null)
+            return null;
+        String name = String.format(Locale.US, "%013d-%05d", System.currentTimeMillis(),
+                sequence.getAndIncrement() % 100000);
+        File file = new File(dir, name + RECORD_SUFFIX);
+        return write(file, record) ? file : null;
+    }
+
+    /**
+     * Replace content of a record returned by {@link #append}, keeping its queue position.
+     * Nothing is written when the record is being uploaded or was already removed.
+     *
+     * @return true when record is replaced
+     */
+    public static boolean replace(File file, JSONInterface record) {
+        if (file == null)
+            return false;
+        synchronized (checkedOut) {
+            return !checkedOut.contains(file) && file.exists() && write(file, record);
+        }
+    }
+
+    /**
+     * @return content of a record, null when it was removed or cannot be parsed
+     */
+    public static JSONObject read(File file) {
+        if (file == null || !file.exists())
+            return null;
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(file));
+            return new JSONObject(source.readUtf8());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(source);
+        }
+    }
+
+    private static boolean write(File file, JSONInterface record) {
+        String name = file.getName();
+        File temp = new File(file.getParentFile(),
+                name.substring(0, name.length() - RECORD_SUFFIX.length()) + TEMP_SUFFIX);
+        BufferedSink sink = null;
+        try {
+            sink = Okio.buffer(Okio.sink(temp));
+            record.writeJSON(new JSONStreamWriter(sink));
+            sink.close();
+            sink = null;
+            return temp.renameTo(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return false;
+        } finally {
+            closeQuietly(sink);
+        }
+    }
+
+    /**
+     * @return true when queue holds no record
+     */
+    public static boolean isEmpty(Context context, String queue) {
+        return listRecords(context, queue).length == 0;
+    }
+
+    /**
+     * Check out oldest records of queue for upload, they must be passed to
+     * {@link #remove} or {@link #release} afterwards
+     *
+     * @return oldest records of queue, at most max
+     */
+    public static List<File> peek(Context context, String queue, int max) {
+        File[] records = listRecords(context, queue);
+        int count = Math.min(max, records.length);
+        List<File> result = new ArrayList<File>(count);
+        Collections.addAll(result, Arrays.copyOf(records, count));
+        synchronized (checkedOut) {
+            checkedOut.addAll(result);
+        }
+        return result;
+    }
+
+    /**
+     * Drop oldest records when queue holds more than max records
+     *
+     * @return number of dropped records
+     */
+    public static int trim(Context context, String queue, int max) {
+        File[] records = listRecords(context, queue);
+        int dropped = 0;
+        synchronized (checkedOut) {
+            for (int i = 0; i < records.length - max; i++) {
+                if (!checkedOut.contains(records[i]) && records[i].delete())
+                    dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Remove checked out records from queue
+     */
+    public static void remove(List<File> records) {
+        synchronized (checkedOut) {
+            for (File record : records)
+                record.delete();
+            checkedOut.removeAll(records);
+        }
+    }
+
+    /**
+     * Return checked out records to queue, e.g. after a failed upload
+     */
+    public static void release(List<File> records) {
+        synchronized (checkedOut) {
+            checkedOut.removeAll(records);
+        }
+    }
+
+    private static File[] listRecords(Context context, String queue) {
+        File dir = getQueueDir(context, queue);
+        File[] records = null;
+        if (dir != null) {
+            records = dir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String filename) {
+                    return filename.endsWith(RECORD_SUFFIX);
+                }
+            });
+        }
+        if (records == null)
+            return new File[0];
+        Arrays.sort(records);
+        return records;
+    }
+
+    private static File getQueueDir(Context context, String queue) {
+        if (context == null)
+            return null;
+        File dir = new File(new File(context.getCacheDir(), STORE_DIR), queue);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(HoneyQAData.HONEYQA_SDK_LOG, "cannot create " + dir);
+            return null;
+        }
+        synchronized (cleanedQueues) {
+            // before first write of this process, a temp file is left by a killed writer
+            if (cleanedQueues.add(queue))
+                deleteTempFiles(dir);
+        }
+        return dir;
+    }
+
+    private static void deleteTempFiles(File dir) {
+        File[] temps = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (temps == null)
+            return;
+        for (File temp : temps)
+            temp.delete();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.honeyqa.client.auth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.honeyqa.client.network.Network;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streamed envelope must carry the same ciphertext as one-shot Cipher.doFinal + Base64
+ */
+public class EncryptorTest {
+
+    private static final String BASE_KEY = "0123456789abcdef";
+    private static final String TOKEN = "token-1";
+
+    @Before
+    public void setUp() {
+        Encryptor.baseKey = BASE_KEY;
+        Encryptor.token = TOKEN;
+    }
+
+    @After
+    public void tearDown() {
+        Encryptor.baseKey = null;
+        Encryptor.token = null;
+    }
+
+    @Test
+    public void envelopeMatchesDoFinal() throws Exception {
+        Random random = new Random(3);
+        for (int size : new int[]{0, 1, 16, 3071, 3072, 8192, 50000}) {
+            byte[] plain = new byte[size];
+            random.nextBytes(plain);
+            Buffer envelope = new Buffer();
+            Encryptor.writeEnvelope(envelope, HQ_RequestBody.create(Network.JSON, plain));
+
+            String expected = "{\"token\":\"" + TOKEN + "\",\"enc_data\":\""
+                    + ByteString.of(doFinal(plain)).base64() + "\",\"src_len\":" + size + "}";
+            assertEquals("size " + size, expected, envelope.readUtf8());
+        }
+    }
+
+    @Test
+    public void encryptMatchesEnvelope() throws Exception {
+        String data = "{\"apikey\":\"key\",\"label\":\"한글\"}";
+        byte[] plain = data.getBytes("UTF-8");
+        String expected = "{\"token\":\"" + TOKEN + "\",\"enc_data\":\""
+                + ByteString.of(doFinal(plain)).base64() + "\",\"src_len\":" + plain.length + "}";
+        assertEquals(expected, Encryptor.encrypt(data));
+    }
+
+    @Test
+    public void baseKeyChangeUsesNewKey() throws Exception {
+        byte[] plain = "same body".getBytes("UTF-8");
+        String first = Encryptor.encrypt("same body");
+        Encryptor.baseKey = "fedcba9876543210";
+        String second = Encryptor.encrypt("same body");
+        assertFalse(first.equals(second));
+        Encryptor.baseKey = BASE_KEY;
+        assertEquals(first, Encryptor.encrypt("same body"));
+        assertTrue(first.contains(ByteString.of(doFinal(plain)).base64()));
+    }
+
+    private static byte[] doFinal(byte[] plain) throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-256").digest(BASE_KEY.getBytes());
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+                new IvParameterSpec("0000000000000000".getBytes()));
+        return cipher.doFinal(plain);
+    }
+}
@@ -0,0 +1,88 @@
+package io.honeyqa.client.collector;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import io.honeyqa.client.data.HoneyQAData;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Arithmetic formatting must match SimpleDateFormat in UTC, it decides the wire format
+ */
+public class DateCollectorTest {
+
+    private static final long YEAR_2100 = 4102444800000L;
+
+    private final SimpleDateFormat seconds = utc("yyyy-MM-dd HH:mm:ss");
+    private final SimpleDateFormat millis = utc("yyyy-MM-dd HH:mm:ss.SSS");
+
+    @After
+    public void tearDown() {
+        HoneyQAData.TimestampMillis = false;
+    }
+
+    @Test
+    public void matchesSimpleDateFormatForRandomInstants() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++)
+            assertFormatted((long) (random.nextDouble() * YEAR_2100));
+    }
+
+    @Test
+    public void matchesSimpleDateFormatOnBoundaries() {
+        long[] instants = {
+                0L,                 // 1970-01-01 00:00:00.000
+                999L,
+                951782400000L,      // 2000-02-29, leap day of a year divisible by 400
+                951868799999L,      // 2000-02-29 23:59:59.999
+                1078012800000L,     // 2004-02-29
+                1230767999999L,     // 2008-12-31 23:59:59.999
+                1230768000000L,     // 2009-01-01
+                4107542400000L,     // 2100-03-01, 2100 is not a leap year
+        };
+        for (long instant : instants) {
+            assertFormatted(instant);
+            assertFormatted(instant + 1);
+            if (instant > 0)
+                assertFormatted(instant - 1);
+        }
+    }
+
+    @Test
+    public void repeatedSecondUsesCachedText() {
+        long instant = 1445000000123L;
+        String first = DateCollector.GetDateYYMMDDHHMMSS(instant);
+        assertEquals(first, DateCollector.GetDateYYMMDDHHMMSS(instant + 500));
+        assertEquals(seconds.format(new Date(instant + 1000)),
+                DateCollector.GetDateYYMMDDHHMMSS(instant + 1000));
+    }
+
+    @Test
+    public void getDateHonoursTimestampMillis() {
+        long instant = 1445000000123L;
+        assertEquals(seconds.format(new Date(instant)), DateCollector.GetDate(instant));
+        HoneyQAData.TimestampMillis = true;
+        assertEquals(millis.format(new Date(instant)), DateCollector.GetDate(instant));
+    }
+
+    private void assertFormatted(long instant) {
+        Date date = new Date(instant);
+        assertEquals("at " + instant, seconds.format(date),
+                DateCollector.GetDateYYMMDDHHMMSS(instant));
+        assertEquals("at " + instant, millis.format(date),
+                DateCollector.GetDateYYMMDDHHMMSSSSS(instant));
+    }
+
+    private static SimpleDateFormat utc(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
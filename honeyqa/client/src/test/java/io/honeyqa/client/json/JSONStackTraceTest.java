@@ -0,0 +1,77 @@
+package io.honeyqa.client.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Text form must match Throwable.printStackTrace, frames beyond maxDepth are counted
+ */
+public class JSONStackTraceTest {
+
+    @Test
+    public void matchesPrintStackTrace() {
+        IOException cause = new IOException("inner");
+        cause.setStackTrace(new StackTraceElement[]{
+                frame("com.app.Io", "read", "Io.java", 7),
+                frame("com.app.Main", "load", "Main.java", 20),
+                frame("com.app.Main", "main", "Main.java", 3)});
+        IllegalStateException suppressed = new IllegalStateException("close");
+        suppressed.setStackTrace(new StackTraceElement[]{
+                frame("com.app.Io", "close", null, 9),
+                frame("com.app.Main", "load", "Main.java", 20),
+                frame("com.app.Main", "main", "Main.java", 3)});
+        RuntimeException exception = new RuntimeException("outer", cause);
+        exception.setStackTrace(new StackTraceElement[]{
+                frame("com.app.Parser", "parse", "Parser.java", -1),
+                frame("java.lang.System", "arraycopy", "System.java", -2),
+                frame("com.app.Main", "load", "Main.java", 20),
+                frame("com.app.Main", "main", "Main.java", 3)});
+        exception.addSuppressed(suppressed);
+
+        String text = new JSONStackTrace(exception, 64).toString();
+        assertEquals(printStackTrace(exception), text);
+    }
+
+    @Test
+    public void countsFramesBeyondMaxDepth() {
+        StackTraceElement[] trace = new StackTraceElement[10];
+        for (int i = 0; i < trace.length; i++)
+            trace[i] = frame("com.app.Deep", "call" + i, "Deep.java", i + 1);
+        Error cause = new StackOverflowError();
+        cause.setStackTrace(trace);
+        RuntimeException exception = new RuntimeException(cause);
+        exception.setStackTrace(new StackTraceElement[]{
+                frame("com.app.Main", "run", "Main.java", 5),
+                trace[9]});
+
+        String text = new JSONStackTrace(exception, 4).toString();
+        assertEquals("java.lang.RuntimeException: java.lang.StackOverflowError\n"
+                + "\tat com.app.Main.run(Main.java:5)\n"
+                + "\tat com.app.Deep.call9(Deep.java:10)\n"
+                + "Caused by: java.lang.StackOverflowError\n"
+                + "\tat com.app.Deep.call0(Deep.java:1)\n"
+                + "\tat com.app.Deep.call1(Deep.java:2)\n"
+                + "\tat com.app.Deep.call2(Deep.java:3)\n"
+                + "\tat com.app.Deep.call3(Deep.java:4)\n"
+                + "\t... 5 truncated\n"
+                + "\t... 1 more\n", text);
+    }
+
+    private static StackTraceElement frame(String className, String method, String file,
+                                           int line) {
+        return new StackTraceElement(className, method, file, line);
+    }
+
+    private static String printStackTrace(Throwable throwable) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        throwable.printStackTrace(printer);
+        printer.flush();
+        return writer.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+}
@@ -0,0 +1,57 @@
+package io.honeyqa.client.json;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import io.honeyqa.client.network.okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Streamed JSON must be valid and escaped like org.json output
+ */
+public class JSONStreamWriterTest {
+
+    @Test
+    public void escapesStrings() throws IOException {
+        Buffer buffer = new Buffer();
+        new JSONStreamWriter(buffer).value("a\"b\\c\nd\re\tf\u0001g\u001fh\u2028i\u2029j/\u00e9");
+        assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\\u0001g\\u001fh\\u2028i\\u2029j/\u00e9\"",
+                buffer.readUtf8());
+    }
+
+    @Test
+    public void escapesNames() throws IOException {
+        Buffer buffer = new Buffer();
+        new JSONStreamWriter(buffer).beginObject().name("k\"\n").value(1).endObject();
+        assertEquals("{\"k\\\"\\n\":1}", buffer.readUtf8());
+    }
+
+    @Test
+    public void separatesElements() throws IOException {
+        Buffer buffer = new Buffer();
+        new JSONStreamWriter(buffer).beginObject()
+                .name("a").value(1)
+                .name("b").beginArray().value("x").value(true).beginObject().endObject().endArray()
+                .name("c").value((String) null)
+                .name("d").value(Double.NaN)
+                .endObject();
+        assertEquals("{\"a\":1,\"b\":[\"x\",true,{}],\"c\":null,\"d\":null}", buffer.readUtf8());
+    }
+
+    @Test
+    public void copiesRawAndBase64Values() throws IOException {
+        Buffer buffer = new Buffer();
+        new JSONStreamWriter(buffer).beginArray()
+                .rawValue(new Buffer().writeUtf8("{\"n\":1}"))
+                .base64Value(new Buffer().writeUtf8("hello"))
+                .endArray();
+        assertEquals("[{\"n\":1},\"aGVsbG8=\"]", buffer.readUtf8());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsNameWithoutValue() throws IOException {
+        new JSONStreamWriter(new Buffer()).beginObject().name("a").name("b");
+    }
+}
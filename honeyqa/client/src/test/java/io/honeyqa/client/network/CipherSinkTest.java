@@ -0,0 +1,67 @@
+package io.honeyqa.client.network;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.BufferedSink;
+import io.honeyqa.client.network.okio.Okio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Chunked encryption must produce the same bytes as one-shot Cipher.doFinal
+ */
+public class CipherSinkTest {
+
+    private static final int[] SIZES = {0, 1, 15, 16, 17, 8191, 8192, 8193, 70000};
+
+    @Test
+    public void matchesDoFinal() throws Exception {
+        Random random = new Random(7);
+        for (int size : SIZES) {
+            byte[] plain = new byte[size];
+            random.nextBytes(plain);
+
+            Buffer encrypted = new Buffer();
+            CipherSink cipherSink = new CipherSink(cipher(Cipher.ENCRYPT_MODE), encrypted);
+            BufferedSink sink = Okio.buffer(cipherSink);
+            // uneven writes cross the chunk boundary at different offsets
+            int offset = 0;
+            while (offset < size) {
+                int count = Math.min(size - offset, 1 + random.nextInt(5000));
+                sink.write(plain, offset, count);
+                offset += count;
+            }
+            sink.emit();
+            cipherSink.finish();
+
+            assertArrayEquals("size " + size, cipher(Cipher.ENCRYPT_MODE).doFinal(plain),
+                    encrypted.readByteArray());
+            assertEquals("size " + size, size, cipherSink.bytesWritten());
+        }
+    }
+
+    @Test
+    public void finishKeepsSinkOpen() throws Exception {
+        Buffer encrypted = new Buffer();
+        CipherSink cipherSink = new CipherSink(cipher(Cipher.ENCRYPT_MODE), encrypted);
+        cipherSink.finish();
+        encrypted.writeUtf8("after");
+        assertEquals(16 + 5, encrypted.size());
+    }
+
+    private static Cipher cipher(int mode) throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-256").digest("base key".getBytes("UTF-8"));
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+        return cipher;
+    }
+}
@@ -0,0 +1,112 @@
+package io.honeyqa.client.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.honeyqa.client.auth.Encryptor;
+import io.honeyqa.client.network.okhttp.HQ_RequestBody;
+import io.honeyqa.client.network.okio.Buffer;
+import io.honeyqa.client.network.okio.ByteString;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Request body pipelines must be reversible: Base64 decode, decrypt, then gunzip when
+ * the body was compressed
+ */
+public class EncryptedRequestBodyTest {
+
+    private static final String BASE_KEY = "0123456789abcdef";
+    private static final Pattern ENVELOPE = Pattern.compile(
+            "\\{\"token\":\"token-1\",\"enc_data\":\"([A-Za-z0-9+/=]*)\",\"src_len\":(\\d+)\\}");
+
+    @Before
+    public void setUp() {
+        Encryptor.baseKey = BASE_KEY;
+        Encryptor.token = "token-1";
+    }
+
+    @After
+    public void tearDown() {
+        Encryptor.baseKey = null;
+        Encryptor.token = null;
+    }
+
+    @Test
+    public void encryptedBodyDecrypts() throws Exception {
+        byte[] plain = json(20000);
+        Buffer sent = new Buffer();
+        new EncryptedRequestBody(HQ_RequestBody.create(Network.JSON, plain)).writeTo(sent);
+
+        Matcher envelope = parse(sent.readUtf8());
+        assertArrayEquals(plain, decrypt(envelope.group(1)));
+        assertEquals(plain.length, Long.parseLong(envelope.group(2)));
+    }
+
+    @Test
+    public void compressedEncryptedBodyDecryptsAndGunzips() throws Exception {
+        for (int size : new int[]{0, 100, 8192, 100000}) {
+            byte[] plain = json(size);
+            Buffer sent = new Buffer();
+            new EncryptedRequestBody(new GzipRequestBody(
+                    HQ_RequestBody.create(Network.JSON, plain))).writeTo(sent);
+
+            Matcher envelope = parse(sent.readUtf8());
+            byte[] compressed = decrypt(envelope.group(1));
+            assertEquals("size " + size, compressed.length, Long.parseLong(envelope.group(2)));
+            assertArrayEquals("size " + size, plain, gunzip(compressed));
+        }
+    }
+
+    private static Matcher parse(String sent) {
+        Matcher envelope = ENVELOPE.matcher(sent);
+        assertTrue(sent, envelope.matches());
+        return envelope;
+    }
+
+    private static byte[] decrypt(String base64) throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-256").digest(BASE_KEY.getBytes());
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+                new IvParameterSpec("0000000000000000".getBytes()));
+        return cipher.doFinal(ByteString.decodeBase64(base64).toByteArray());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return compressible JSON-like body of size bytes
+     */
+    private static byte[] json(int size) {
+        Random random = new Random(size);
+        StringBuilder body = new StringBuilder(size);
+        while (body.length() < size)
+            body.append("{\"line\":").append(random.nextInt(1000)).append("},");
+        return body.substring(0, size).getBytes();
+    }
+}
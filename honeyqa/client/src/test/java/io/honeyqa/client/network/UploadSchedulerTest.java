@@ -0,0 +1,136 @@
+package io.honeyqa.client.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.honeyqa.client.data.HoneyQAData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pending tasks are coalesced by key and the oldest request payload is dropped
+ * when the queue is full
+ */
+public class UploadSchedulerTest {
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private CountDownLatch blocked;
+    private int maxPendingUploads;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        maxPendingUploads = HoneyQAData.MaxPendingUploads;
+        blocked = new CountDownLatch(1);
+        final CountDownLatch running = new CountDownLatch(1);
+        // keeps the worker busy, so following tasks stay pending
+        UploadScheduler.schedule(new Object(), new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        blocked.countDown();
+        HoneyQAData.MaxPendingUploads = maxPendingUploads;
+    }
+
+    @Test
+    public void coalescesPendingKey() throws InterruptedException {
+        int coalesced = UploadScheduler.getCoalescedCount();
+        assertTrue(UploadScheduler.schedule("key", new Task("first")));
+        assertFalse(UploadScheduler.schedule("key", new Task("second")));
+        assertEquals(coalesced + 1, UploadScheduler.getCoalescedCount());
+        runPending();
+        assertEquals(Arrays.asList("first"), ran);
+    }
+
+    @Test
+    public void evictsOldestRequest() throws InterruptedException {
+        HoneyQAData.MaxPendingUploads = 3;
+        int dropped = UploadScheduler.getDroppedCount();
+        UploadScheduler.schedule("task", new Task("task"));
+        UploadScheduler.schedule(new Request("first"));
+        UploadScheduler.schedule(new Request("second"));
+        UploadScheduler.schedule(new Request("third"));
+        assertEquals(dropped + 1, UploadScheduler.getDroppedCount());
+        HoneyQAData.MaxPendingUploads = maxPendingUploads;
+        runPending();
+        assertEquals(Arrays.asList("task", "second", "third"), ran);
+    }
+
+    @Test
+    public void encryptedTaskWaitsForKey() throws InterruptedException {
+        assertTrue(UploadScheduler.schedule("encrypted", new Task("encrypted"), true));
+        runPending();
+        assertTrue(ran.isEmpty());
+        UploadScheduler.releaseWaitingForKey();
+        runPending();
+        assertEquals(Arrays.asList("encrypted"), ran);
+    }
+
+    /**
+     * Unblock worker and wait until tasks pending now have run
+     */
+    private void runPending() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        UploadScheduler.schedule(new Object(), new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        blocked.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private class Task implements Runnable {
+
+        private final String name;
+
+        Task(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+    }
+
+    /**
+     * Request payload which records instead of connecting
+     */
+    private class Request extends Network {
+
+        private final String name;
+
+        Request(String name) {
+            this.name = name;
+            setNetworkOption("http://localhost/" + name, name, Method.POST, false);
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.honeyqa.client.store;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import io.honeyqa.client.json.JSONInterface;
+import io.honeyqa.client.json.JSONStreamWriter;
+import io.honeyqa.client.network.okio.BufferedSource;
+import io.honeyqa.client.network.okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Records must be written atomically and checked out records must survive
+ * replace and trim until they are removed or released
+ */
+public class ReportStoreTest {
+
+    private File cacheDir;
+    private Context context;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = File.createTempFile("honeyqa", "");
+        cacheDir.delete();
+        cacheDir.mkdirs();
+        context = mock(Context.class);
+        when(context.getCacheDir()).thenReturn(cacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        delete(cacheDir);
+    }
+
+    @Test
+    public void appendRenamesTempFile() throws IOException {
+        File record = ReportStore.append(context, "append", new Record("a"));
+        assertNotNull(record);
+        assertTrue(record.getName().endsWith(".json"));
+        assertEquals("{\"value\":\"a\"}", read(record));
+        assertEquals(1, record.getParentFile().list().length);
+    }
+
+    @Test
+    public void failedAppendLeavesNoFile() {
+        File record = ReportStore.append(context, "failed", new Record(null));
+        assertNull(record);
+        assertTrue(ReportStore.isEmpty(context, "failed"));
+        assertEquals(0, new File(new File(cacheDir, "honeyqa"), "failed").list().length);
+    }
+
+    @Test
+    public void checkedOutRecordIsNotReplaced() throws IOException {
+        File record = ReportStore.append(context, "replace", new Record("a"));
+        List<File> records = ReportStore.peek(context, "replace", 10);
+        assertEquals(1, records.size());
+        assertFalse(ReportStore.replace(record, new Record("b")));
+        ReportStore.release(records);
+        assertTrue(ReportStore.replace(record, new Record("b")));
+        assertEquals("{\"value\":\"b\"}", read(record));
+    }
+
+    @Test
+    public void removeDeletesCheckedOutRecords() {
+        ReportStore.append(context, "remove", new Record("a"));
+        ReportStore.append(context, "remove", new Record("b"));
+        List<File> records = ReportStore.peek(context, "remove", 1);
+        ReportStore.remove(records);
+        assertFalse(records.get(0).exists());
+        assertEquals(1, ReportStore.peek(context, "remove", 10).size());
+    }
+
+    @Test
+    public void trimSkipsCheckedOutRecords() {
+        File oldest = ReportStore.append(context, "trim", new Record("a"));
+        File middle = ReportStore.append(context, "trim", new Record("b"));
+        File newest = ReportStore.append(context, "trim", new Record("c"));
+        List<File> records = ReportStore.peek(context, "trim", 1);
+        assertEquals(oldest, records.get(0));
+        assertEquals(1, ReportStore.trim(context, "trim", 1));
+        assertTrue(oldest.exists());
+        assertFalse(middle.exists());
+        assertTrue(newest.exists());
+        ReportStore.remove(records);
+    }
+
+    @Test
+    public void staleTempFilesAreDeleted() throws IOException {
+        File dir = new File(new File(cacheDir, "honeyqa"), "stale");
+        dir.mkdirs();
+        File temp = new File(dir, "0000000000000-00000.tmp");
+        assertTrue(temp.createNewFile());
+        assertTrue(ReportStore.isEmpty(context, "stale"));
+        assertFalse(temp.exists());
+    }
+
+    private static String read(File file) throws IOException {
+        BufferedSource source = Okio.buffer(Okio.source(file));
+        try {
+            return source.readUtf8();
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+
+    /**
+     * Record with one string value, a null value fails while it is written
+     */
+    private static class Record implements JSONInterface {
+
+        private final String value;
+
+        Record(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public JSONObject toJSONObject() {
+            return null;
+        }
+
+        @Override
+        public void writeJSON(JSONStreamWriter writer) throws IOException {
+            writer.beginObject().name("value");
+            if (value == null)
+                throw new IOException("write failed");
+            writer.value(value).endObject();
+        }
+    }
+}